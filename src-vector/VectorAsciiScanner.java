@@ -0,0 +1,47 @@
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API half of AsciiScanner, only loaded when the jdk.incubator.vector module is present.
+// It lives in its own source root (the Vector module), the only code compiled with --add-modules
+// jdk.incubator.vector, so the rest of the project builds without the incubator module and its warning.
+// AsciiScanner finds it by name at runtime and scans scalar if it isn't on the classpath.
+// Chars are copied out of the String in chunks (String.getChars is itself a vectorized intrinsic) and tested
+// a full vector at a time. Chunks start small and double, so a run that ends early doesn't pay for a big copy.
+final class VectorAsciiScanner {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int MIN_CHUNK = 64;
+    private static final int MAX_CHUNK = 2048;
+    private static final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[MAX_CHUNK]);
+
+    private VectorAsciiScanner() {
+    }
+
+    static int firstNonAscii(String text, int from, int to) {
+        char[] buffer = buffers.get();
+        int chunk = MIN_CHUNK;
+        int i = from;
+        while (i < to) {
+            int length = Math.min(chunk, to - i);
+            text.getChars(i, i + length, buffer, 0);
+            int j = 0;
+            for (int bound = SPECIES.loopBound(length); j < bound; j += SPECIES.length()) {
+                VectorMask<Short> nonAscii = ShortVector.fromCharArray(SPECIES, buffer, j)
+                        .and((short) 0xFF80)
+                        .compare(VectorOperators.NE, (short) 0);
+                if (nonAscii.anyTrue()) {
+                    return i + j + nonAscii.firstTrue();
+                }
+            }
+            for (; j < length; j++) {
+                if (buffer[j] > 127) {
+                    return i + j;
+                }
+            }
+            i += length;
+            chunk = Math.min(MAX_CHUNK, chunk * 2);
+        }
+        return to;
+    }
+}
@@ -0,0 +1,64 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Finds where the ASCII run starting at an index ends. Long runs in Strings are scanned with the Vector API
+// (VectorAsciiScanner, in the src-vector source root) when the jdk.incubator.vector module is available,
+// i.e. the JVM was started with --add-modules jdk.incubator.vector, and VectorAsciiScanner is on the classpath;
+// otherwise, or with -Dnormalizer.scalarScan=true, it is one char at a time.
+// VectorAsciiScanner is bound through a MethodHandle so this class compiles without the incubator module.
+// VECTOR_SCAN is a static final, so the JIT keeps only the branch that applies and inlines the call.
+final class AsciiScanner {
+    private static final MethodHandle VECTOR_SCAN = findVectorScan();
+    // Below this many chars the setup of a vector scan costs more than it saves
+    private static final int MIN_VECTOR_LENGTH = 128;
+
+    private AsciiScanner() {
+    }
+
+    static boolean isVectorized() {
+        return VECTOR_SCAN != null;
+    }
+
+    // Index of the first char in text[from, to) above 127, or to if there is none
+    static int firstNonAscii(CharSequence text, int from, int to) {
+        if (VECTOR_SCAN != null && to - from >= MIN_VECTOR_LENGTH && text instanceof String) {
+            // Check a few chars first, most runs in mixed text are short
+            int i = from;
+            int end = from + MIN_VECTOR_LENGTH;
+            while (i < end && text.charAt(i) <= 127) {
+                i++;
+            }
+            return i < end ? i : vectorScan((String) text, i, to);
+        }
+        int i = from;
+        while (i < to && text.charAt(i) <= 127) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int vectorScan(String text, int from, int to) {
+        try {
+            return (int) VECTOR_SCAN.invokeExact(text, from, to);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e); // firstNonAscii declares nothing checked
+        }
+    }
+
+    // Method to bind VectorAsciiScanner.firstNonAscii, or return null to scan scalar
+    private static MethodHandle findVectorScan() {
+        if (Boolean.getBoolean("normalizer.scalarScan")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName("VectorAsciiScanner"), "firstNonAscii",
+                    MethodType.methodType(int.class, String.class, int.class, int.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // Built without the src-vector source root
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Canonical decompositions (NFD) with combining marks (\p{M}) removed, for every code point where that changes
+// anything. The table is generated at build time by running main, which writes decompositions.txt next to the
+// sources so it ships as a resource; regenerate it when moving to a JDK with a newer Unicode version.
+// Hangul syllables are left out since they decompose algorithmically, see hangulLeading and friends.
+//
+// Usage: java Decompositions [output-file]   (default src/decompositions.txt)
+final class Decompositions {
+    static final String RESOURCE = "decompositions.txt";
+
+    private static final int HANGUL_BASE = 0xAC00;
+    private static final int HANGUL_COUNT = 11172;
+    private static final int HANGUL_V_COUNT = 21;
+    private static final int HANGUL_T_COUNT = 28;
+
+    private Decompositions() {
+    }
+
+    // Loaded on first use and shared by every profile
+    private static final class Holder {
+        static final Map<Integer, String> TABLE = Collections.unmodifiableMap(load());
+    }
+
+    // Method to get the shared, read-only table
+    static Map<Integer, String> table() {
+        return Holder.TABLE;
+    }
+
+    // Method to load the precomputed table, computing it with java.text.Normalizer if the resource is missing
+    static Map<Integer, String> load() {
+        byte[] data;
+        try (InputStream in = Decompositions.class.getResourceAsStream("/" + RESOURCE)) {
+            if (in == null) {
+                return compute();
+            }
+            data = in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + RESOURCE + ".", e);
+        }
+
+        // Lines are "<code point> <code point>..." in hex, parsed by hand since this runs during class initialization
+        Map<Integer, String> decompositions = new HashMap<>(8192);
+        StringBuilder decomposition = new StringBuilder();
+        int i = 0;
+        while (i < data.length) {
+            if (data[i] == '#') {
+                while (i < data.length && data[i++] != '\n') {
+                    // Skip comment line
+                }
+                continue;
+            }
+            int key = -1;
+            decomposition.setLength(0);
+            while (i < data.length && data[i] != '\n') {
+                int value = 0;
+                int digits = 0;
+                while (i < data.length && Character.digit(data[i], 16) >= 0) {
+                    value = (value << 4) | Character.digit(data[i++], 16);
+                    digits++;
+                }
+                if (digits == 0) {
+                    i++; // Separator, or the \r of a CRLF line ending
+                } else if (key < 0) {
+                    key = value;
+                } else {
+                    decomposition.appendCodePoint(value);
+                }
+            }
+            i++;
+            if (key >= 0) {
+                decompositions.put(key, decomposition.toString());
+            }
+        }
+        return decompositions;
+    }
+
+    // Method to compute the table from java.text.Normalizer
+    static Map<Integer, String> compute() {
+        Map<Integer, String> decompositions = new TreeMap<>();
+        for (int cp = 0x80; cp <= Character.MAX_CODE_POINT; cp++) {
+            if (Character.getType(cp) == Character.UNASSIGNED || Character.getType(cp) == Character.SURROGATE
+                    || isHangulSyllable(cp)) {
+                continue;
+            }
+            String original = new String(Character.toChars(cp));
+            String stripped = stripMarks(Normalizer.normalize(original, Normalizer.Form.NFD));
+            if (!stripped.equals(original)) {
+                decompositions.put(cp, stripped);
+            }
+        }
+        return decompositions;
+    }
+
+    // Remove combining marks by code point
+    static String stripMarks(String decomposed) {
+        StringBuilder sb = null;
+        for (int i = 0; i < decomposed.length(); ) {
+            int cp = decomposed.codePointAt(i);
+            int next = i + Character.charCount(cp);
+            if (isMark(cp)) {
+                if (sb == null) {
+                    sb = new StringBuilder(decomposed.length());
+                    sb.append(decomposed, 0, i);
+                }
+            } else if (sb != null) {
+                sb.append(decomposed, i, next);
+            }
+            i = next;
+        }
+        return sb == null ? decomposed : sb.toString();
+    }
+
+    static boolean isMark(int cp) {
+        int type = Character.getType(cp);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    static boolean isHangulSyllable(int cp) {
+        return cp >= HANGUL_BASE && cp < HANGUL_BASE + HANGUL_COUNT;
+    }
+
+    // The conjoining jamo of a Hangul syllable (Unicode 3.12), none of which are marks.
+    // The trailing consonant is 0 for syllables without one.
+    static int hangulLeading(int cp) {
+        return 0x1100 + (cp - HANGUL_BASE) / (HANGUL_V_COUNT * HANGUL_T_COUNT);
+    }
+
+    static int hangulVowel(int cp) {
+        return 0x1161 + ((cp - HANGUL_BASE) % (HANGUL_V_COUNT * HANGUL_T_COUNT)) / HANGUL_T_COUNT;
+    }
+
+    static int hangulTrailing(int cp) {
+        int t = (cp - HANGUL_BASE) % HANGUL_T_COUNT;
+        return t == 0 ? 0 : 0x11A7 + t;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String output = args.length > 0 ? args[0] : "src/" + RESOURCE;
+        Map<Integer, String> decompositions = compute();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.US_ASCII))) {
+            writer.print("# NFD decompositions with combining marks removed, generated by Decompositions.main\n");
+            writer.print("# on Java " + System.getProperty("java.version") + ". Hangul syllables are decomposed in code.\n");
+            writer.print("# Format: code point, then the code points it decomposes to (none if it is a mark), in hex.\n");
+            for (Map.Entry<Integer, String> entry : decompositions.entrySet()) {
+                StringBuilder line = new StringBuilder(String.format("%04X", entry.getKey()));
+                entry.getValue().codePoints().forEach(cp -> line.append(' ').append(String.format("%04X", cp)));
+                writer.print(line.append('\n'));
+            }
+        }
+        System.out.println("Wrote " + decompositions.size() + " decompositions to " + output);
+    }
+}
@@ -0,0 +1,59 @@
+// Output formats for non-ASCII characters, as used by StringNormalizer.nonAsciiLookup
+public enum EscapeMode {
+    HTML,    // &#223;
+    UNICODE, // Java-style unicode escape, backslash-u00DF
+    HEX;     // 0x00DF
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Method to resolve a mode name case-insensitively ("html", "unicode" or "hex")
+    public static EscapeMode fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "html":
+                return HTML;
+            case "unicode":
+                return UNICODE;
+            case "hex":
+                return HEX;
+            default:
+                throw new IllegalArgumentException("Invalid mode. Use 'html', 'unicode', or 'hex'.");
+        }
+    }
+
+    // Append the escape for one code point, digits are written directly without going through a Formatter.
+    // Supplementary code points get one escape, except in UNICODE mode where they become a surrogate pair
+    // of escapes, the only form a four digit unicode escape can express.
+    void append(int cp, StringBuilder out) {
+        if (NormalizerMetrics.ENABLED) {
+            NormalizerMetrics.recordEscaped(cp);
+        }
+        switch (this) {
+            case HTML:
+                out.append('&').append('#').append(cp).append(';');
+                break;
+            case UNICODE:
+                if (Character.isSupplementaryCodePoint(cp)) {
+                    out.append('\\').append('u');
+                    appendHex(Character.highSurrogate(cp), out);
+                    out.append('\\').append('u');
+                    appendHex(Character.lowSurrogate(cp), out);
+                } else {
+                    out.append('\\').append('u');
+                    appendHex(cp, out);
+                }
+                break;
+            case HEX:
+                out.append('0').append('x');
+                appendHex(cp, out);
+                break;
+        }
+    }
+
+    // Uppercase hex with at least four digits, like %04X
+    private static void appendHex(int value, StringBuilder out) {
+        int digits = Math.max(4, (35 - Integer.numberOfLeadingZeros(value)) >>> 2);
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.append(HEX_DIGITS[(value >>> shift) & 0xF]);
+        }
+    }
+}
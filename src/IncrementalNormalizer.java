@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Keeps the normalized form of a text that is edited in place, for editors that would otherwise run
+// normalize over the whole document after every change. Output always equals StringNormalizer.normalize(input).
+//
+// The text is held in blocks of a few thousand chars, each with its input, its output and an offset map
+// from every input char to where its output starts. An edit re-normalizes only the edited span, widened to
+// whole code points and combining sequences, and splices the result into the block, so its cost depends
+// on the edit and the block size rather than the document size. Locating a block is a scan over the blocks.
+//
+// The offset map works in both directions (outputOffset/inputOffset), e.g. to highlight matches found in the
+// normalized text on the original. Chars with no output of their own (combining marks, the second half of a
+// surrogate pair) map to where the next output starts.
+public final class IncrementalNormalizer {
+    private static final int BLOCK_SIZE = 2048;
+
+    private final List<Block> blocks = new ArrayList<>();
+
+    public IncrementalNormalizer() {
+    }
+
+    public IncrementalNormalizer(CharSequence text) {
+        append(text);
+    }
+
+    public void append(CharSequence text) {
+        int length = inputLength();
+        replace(length, length, text);
+    }
+
+    public void insert(int offset, CharSequence text) {
+        replace(offset, offset, text);
+    }
+
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    // Method to replace input[start, end) with text and update the output to match
+    public void replace(int start, int end, CharSequence text) {
+        Objects.checkFromToIndex(start, end, inputLength());
+        if (blocks.isEmpty()) {
+            blocks.add(new Block());
+        }
+        // At a block boundary the edit goes to the end of the earlier block
+        int first = 0;
+        int firstBase = 0;
+        while (start > firstBase + blocks.get(first).input.length()) {
+            firstBase += blocks.get(first).input.length();
+            first++;
+        }
+        int last = first;
+        int lastBase = firstBase;
+        while (end > lastBase + blocks.get(last).input.length()) {
+            lastBase += blocks.get(last).input.length();
+            last++;
+        }
+
+        Block block = blocks.get(first);
+        if (first == last) {
+            block.replace(start - firstBase, end - firstBase, text);
+        } else {
+            block.replace(start - firstBase, block.input.length(), text);
+            blocks.get(last).replace(0, end - lastBase, "");
+            blocks.subList(first + 1, last).clear();
+        }
+
+        // Drop emptied blocks, then rejoin any surrogate pair the edit brought together across a boundary
+        blocks.removeIf(b -> b.input.length() == 0);
+        int from = Math.max(0, first - 1);
+        for (int i = from; i <= from + 2; i++) {
+            joinSurrogatePair(i);
+        }
+        blocks.removeIf(b -> b.input.length() == 0);
+
+        int index = blocks.indexOf(block);
+        if (index >= 0 && block.input.length() > 2 * BLOCK_SIZE) {
+            blocks.remove(index);
+            blocks.addAll(index, block.split());
+        }
+    }
+
+    public int inputLength() {
+        int length = 0;
+        for (Block block : blocks) {
+            length += block.input.length();
+        }
+        return length;
+    }
+
+    public int outputLength() {
+        int length = 0;
+        for (Block block : blocks) {
+            length += block.output.length();
+        }
+        return length;
+    }
+
+    public String input() {
+        StringBuilder sb = new StringBuilder(inputLength());
+        for (Block block : blocks) {
+            sb.append(block.input);
+        }
+        return sb.toString();
+    }
+
+    public String output() {
+        StringBuilder sb = new StringBuilder(outputLength());
+        for (Block block : blocks) {
+            sb.append(block.output);
+        }
+        return sb.toString();
+    }
+
+    // Method to map an input offset to where its output starts, inputLength() maps to outputLength()
+    public int outputOffset(int inputOffset) {
+        Objects.checkIndex(inputOffset, inputLength() + 1);
+        int inputBase = 0;
+        int outputBase = 0;
+        for (Block block : blocks) {
+            if (inputOffset < inputBase + block.input.length()) {
+                return outputBase + block.outputStart[inputOffset - inputBase];
+            }
+            inputBase += block.input.length();
+            outputBase += block.output.length();
+        }
+        return outputBase;
+    }
+
+    // Method to map an output offset to the input char it was produced from, outputLength() maps to inputLength()
+    public int inputOffset(int outputOffset) {
+        Objects.checkIndex(outputOffset, outputLength() + 1);
+        int inputBase = 0;
+        int outputBase = 0;
+        for (Block block : blocks) {
+            if (outputOffset < outputBase + block.output.length()) {
+                return inputBase + block.inputIndex(outputOffset - outputBase);
+            }
+            inputBase += block.input.length();
+            outputBase += block.output.length();
+        }
+        return inputBase;
+    }
+
+    // Blocks never split a surrogate pair, if an edit left a high surrogate at the end of one block
+    // and a low surrogate at the start of the next, move the low one over
+    private void joinSurrogatePair(int index) {
+        if (index < 0 || index + 1 >= blocks.size()) {
+            return;
+        }
+        StringBuilder left = blocks.get(index).input;
+        StringBuilder right = blocks.get(index + 1).input;
+        if (left.length() > 0 && right.length() > 0 && Character.isHighSurrogate(left.charAt(left.length() - 1))
+                && Character.isLowSurrogate(right.charAt(0))) {
+            String low = right.substring(0, 1);
+            blocks.get(index + 1).replace(0, 1, "");
+            blocks.get(index).replace(left.length(), left.length(), low);
+        }
+    }
+
+    // Whether the char at index belongs to the code point or combining sequence before it
+    private static boolean continuesSequence(CharSequence text, int index) {
+        if (index <= 0 || index >= text.length()) {
+            return false;
+        }
+        if (Character.isLowSurrogate(text.charAt(index)) && Character.isHighSurrogate(text.charAt(index - 1))) {
+            return true;
+        }
+        return Decompositions.isMark(Character.codePointAt(text, index));
+    }
+
+    private static int sequenceStart(CharSequence text, int index) {
+        while (continuesSequence(text, index)) {
+            index--;
+        }
+        return index;
+    }
+
+    private static int sequenceEnd(CharSequence text, int index) {
+        while (continuesSequence(text, index)) {
+            index++;
+        }
+        return index;
+    }
+
+    private static final class Block {
+        final StringBuilder input = new StringBuilder();
+        final StringBuilder output = new StringBuilder();
+        // outputStart[i] is where the output for input char i starts, outputStart[input.length()] == output.length()
+        int[] outputStart = {0};
+
+        void replace(int from, int to, CharSequence text) {
+            // Widen to whole sequences both before and after the edit, since either may have joined or split one
+            int start = sequenceStart(input, from);
+            int suffix = sequenceEnd(input, to) - to;
+            int oldLength = input.length();
+            input.replace(from, to, text.toString());
+            int editEnd = from + text.length();
+            start = Math.min(start, sequenceStart(input, from));
+            suffix = Math.max(suffix, sequenceEnd(input, editEnd) - editEnd);
+            int end = editEnd + suffix;
+            int oldEnd = to + suffix;
+
+            StringBuilder normalized = new StringBuilder(end - start + 16);
+            int[] spanStarts = new int[end - start];
+            for (int i = start; i < end; ) {
+                int cp = Character.codePointAt(input, i);
+                spanStarts[i - start] = normalized.length();
+                StringNormalizer.appendNormalized(cp, normalized);
+                if (Character.charCount(cp) == 2) {
+                    spanStarts[i + 1 - start] = normalized.length();
+                }
+                i += Character.charCount(cp);
+            }
+
+            int outputFrom = outputStart[start];
+            int outputTo = outputStart[oldEnd];
+            output.replace(outputFrom, outputTo, normalized.toString());
+            int delta = normalized.length() - (outputTo - outputFrom);
+            int[] starts = new int[input.length() + 1];
+            System.arraycopy(outputStart, 0, starts, 0, start);
+            for (int i = 0; i < spanStarts.length; i++) {
+                starts[start + i] = outputFrom + spanStarts[i];
+            }
+            for (int i = oldEnd; i <= oldLength; i++) {
+                starts[end + i - oldEnd] = outputStart[i] + delta;
+            }
+            outputStart = starts;
+        }
+
+        // Input char whose output contains output char offset
+        int inputIndex(int offset) {
+            int low = 0;
+            int high = input.length() - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (outputStart[mid] <= offset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        // Method to cut the block into pieces of about BLOCK_SIZE, never inside a sequence
+        List<Block> split() {
+            List<Block> pieces = new ArrayList<>();
+            int from = 0;
+            while (from < input.length()) {
+                int to = sequenceEnd(input, Math.min(input.length(), from + BLOCK_SIZE));
+                Block piece = new Block();
+                piece.input.append(input, from, to);
+                piece.output.append(output, outputStart[from], outputStart[to]);
+                piece.outputStart = new int[to - from + 1];
+                for (int i = from; i <= to; i++) {
+                    piece.outputStart[i - from] = outputStart[i] - outputStart[from];
+                }
+                pieces.add(piece);
+                from = to;
+            }
+            return pieces;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+// Throughput and allocation benchmark for the StringNormalizer methods.
+// Reports ops/s, ns/op and allocated bytes per op (the equivalent of JMH's gc.alloc.rate.norm)
+// for every benchmark over every corpus, after the heap footprint of the default folding table.
+//
+// Every benchmark/corpus pair runs in a fresh JVM with the same JVM options, so the JIT profile of one
+// benchmark never shapes another's (the call site in measure stays monomorphic) and results don't depend
+// on run order. -Dbench.fork=false runs everything in this JVM instead, e.g. for a quick check in a debugger.
+// Each benchmark reduces its result to a long (a length, or the primitive result itself), so the harness
+// doesn't allocate anything the code under test doesn't.
+//
+// Batch benchmarks (normalizeAll, normalizeColumns, ParallelFileNormalizer) take a whole corpus per call and
+// are reported per value, so their rows compare directly with normalize. Their parallel variants only count
+// what the calling thread allocates, not the pool threads.
+//
+// Usage: java NormalizerBenchmark [benchmark-filter] [corpus-filter]
+// Timing can be tuned with -Dbench.warmup.ms, -Dbench.measure.ms and -Dbench.rounds (default 500/1000/3).
+public class NormalizerBenchmark {
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmup.ms", 500);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measure.ms", 1000);
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 3);
+    private static final boolean FORK = Boolean.parseBoolean(System.getProperty("bench.fork", "true"));
+    // Argument a forked JVM gets in front of the exact benchmark and corpus name
+    private static final String RUN_ONE = "--run-one";
+    private static final int LARGE_INPUT_CHARS = 1 << 20;
+
+    private static final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Keeps results reachable so the JIT cannot drop the benchmarked calls
+    private static volatile long sink;
+
+    private static final NormalizerCache cache = new NormalizerCache(1 << 20);
+
+    // UTF-8 forms of the corpus inputs and an output buffer for the byte path benchmark
+    private static final Map<String, byte[]> utf8Inputs = new IdentityHashMap<>();
+    private static final ByteBuffer utf8Output = ByteBuffer.allocateDirect(LARGE_INPUT_CHARS * 8);
+
+    // Profile with German umlaut rules, for the cost of rules on top of the default folding
+    private static final ProfiledNormalizer profiled = new ProfiledNormalizer(NormalizerProfile.builder()
+            .put('ä', "ae").put('ö', "oe").put('ü', "ue").put('Ä', "Ae").put('Ö', "Oe").put('Ü', "Ue").build());
+
+    // Reused output for the Appendable and streaming benchmarks
+    private static final StringBuilder appendableOutput = new StringBuilder(LARGE_INPUT_CHARS * 8);
+    private static final CountingWriter countingWriter = new CountingWriter();
+    private static final CountingChannel countingChannel = new CountingChannel();
+
+    // UTF-8 files of the corpora for ParallelFileNormalizer, one value per line
+    private static final Map<String[], Path> corpusFiles = new IdentityHashMap<>();
+
+    private static final Map<String, ToLongFunction<String>> benchmarks = new LinkedHashMap<>();
+    static {
+        benchmarks.put("replaceDiacritics", text(StringNormalizer::replaceDiacritics));
+        benchmarks.put("replaceNonAscii", text(StringNormalizer::replaceNonAscii));
+        benchmarks.put("nonAsciiLookup.html", text(input -> StringNormalizer.nonAsciiLookup(input, "html")));
+        benchmarks.put("nonAsciiLookup.unicode", text(input -> StringNormalizer.nonAsciiLookup(input, "unicode")));
+        benchmarks.put("nonAsciiLookup.hex", text(input -> StringNormalizer.nonAsciiLookup(input, "hex")));
+        benchmarks.put("pipeline", text(input -> StringNormalizer.replaceNonAscii(StringNormalizer.replaceDiacritics(input))));
+        benchmarks.put("normalize", text(StringNormalizer::normalize));
+        benchmarks.put("replaceDiacritics.utf8", input -> {
+            byte[] utf8 = utf8Inputs.computeIfAbsent(input, text -> text.getBytes(StandardCharsets.UTF_8));
+            utf8Output.clear();
+            return StringNormalizer.replaceDiacritics(utf8, 0, utf8.length, utf8Output);
+        });
+        // Decode, fold and encode, what the byte path has to beat
+        benchmarks.put("replaceDiacritics.utf8.decoded", input -> {
+            byte[] utf8 = utf8Inputs.computeIfAbsent(input, text -> text.getBytes(StandardCharsets.UTF_8));
+            utf8Output.clear();
+            String folded = StringNormalizer.replaceDiacritics(new String(utf8, StandardCharsets.UTF_8));
+            utf8Output.put(folded.getBytes(StandardCharsets.UTF_8));
+            return utf8Output.position();
+        });
+        benchmarks.put("cached.replaceDiacritics", text(cache::replaceDiacritics));
+        // Longest-match rules on top of the same folding, to compare against replaceDiacritics
+        benchmarks.put("transliterate", text(Transliterator.defaultTransliterator()::transliterate));
+        benchmarks.put("transliterate.normalize", text(Transliterator.defaultTransliterator()::normalize));
+        // Search keys the way main builds them, against the fused pass
+        benchmarks.put("searchKey.pipeline", text(input -> StringNormalizer.replaceNonAscii(StringNormalizer.replaceDiacritics(input))
+                .replaceAll("\\s{2,}", " ").trim().toLowerCase(Locale.ROOT)));
+        benchmarks.put("searchKey", text(SearchKey::of));
+        benchmarks.put("searchKey.hash", SearchKey::hash);
+        // Mode resolved up front, and escaping into the caller's Appendable (StringBuilder or any other)
+        benchmarks.put("nonAsciiLookup.enum", text(input -> StringNormalizer.nonAsciiLookup(input, EscapeMode.HTML)));
+        benchmarks.put("nonAsciiLookup.appendable", input -> {
+            appendableOutput.setLength(0);
+            return io(() -> StringNormalizer.nonAsciiLookup(input, EscapeMode.HTML, appendableOutput), appendableOutput::length);
+        });
+        benchmarks.put("nonAsciiLookup.writer", input -> {
+            countingWriter.count = 0;
+            return io(() -> StringNormalizer.nonAsciiLookup(input, EscapeMode.HTML, countingWriter), () -> countingWriter.count);
+        });
+        // Streaming normalize, with its buffers and carry-over handling, against normalize on the whole value
+        benchmarks.put("normalize.reader", input -> {
+            countingWriter.count = 0;
+            return io(() -> StringNormalizer.normalize(new StringReader(input), countingWriter), () -> countingWriter.count);
+        });
+        benchmarks.put("normalize.channel", input -> {
+            byte[] utf8 = utf8Inputs.computeIfAbsent(input, text -> text.getBytes(StandardCharsets.UTF_8));
+            countingChannel.count = 0;
+            return io(() -> StringNormalizer.normalize(Channels.newChannel(new ByteArrayInputStream(utf8)),
+                    countingChannel), () -> countingChannel.count);
+        });
+        benchmarks.put("profiled.replaceDiacritics", text(profiled::replaceDiacritics));
+        benchmarks.put("profiled.normalize", text(profiled::normalize));
+    }
+
+    private static final Map<String, ToLongFunction<String[]>> batchBenchmarks = new LinkedHashMap<>();
+    static {
+        batchBenchmarks.put("normalizeAll", inputs -> {
+            String[] outputs = new String[inputs.length];
+            StringNormalizer.normalizeAll(inputs, outputs);
+            return totalLength(outputs);
+        });
+        batchBenchmarks.put("normalizeAll.parallel", inputs -> {
+            String[] outputs = new String[inputs.length];
+            StringNormalizer.normalizeAll(inputs, outputs, true);
+            return totalLength(outputs);
+        });
+        // Four columns of a quarter of the values each, copied first since they are normalized in place
+        batchBenchmarks.put("normalizeColumns", inputs -> normalizeColumns(inputs, false));
+        batchBenchmarks.put("normalizeColumns.parallel", inputs -> normalizeColumns(inputs, true));
+        batchBenchmarks.put("parallelFile", inputs -> {
+            Path input = corpusFiles.computeIfAbsent(inputs, NormalizerBenchmark::writeCorpusFile);
+            Path output = input.resolveSibling(input.getFileName() + ".out");
+            return io(() -> ParallelFileNormalizer.normalize(input, output,
+                    Runtime.getRuntime().availableProcessors()), () -> output.toFile().length());
+        });
+    }
+
+    // Benchmark of a method returning text, reduced to the text's length
+    private static ToLongFunction<String> text(Function<String, ? extends CharSequence> operation) {
+        return input -> operation.apply(input).length();
+    }
+
+    private interface IoOperation {
+        void run() throws IOException;
+    }
+
+    // Run an operation that writes somewhere and return how much it wrote
+    private static long io(IoOperation operation, LongSupplier written) {
+        try {
+            operation.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return written.getAsLong();
+    }
+
+    private static long totalLength(String[] values) {
+        long length = 0;
+        for (String value : values) {
+            length += value.length();
+        }
+        return length;
+    }
+
+    private static long normalizeColumns(String[] inputs, boolean parallel) {
+        int quarter = (inputs.length + 3) / 4;
+        String[][] columns = new String[4][];
+        for (int c = 0; c < 4; c++) {
+            columns[c] = Arrays.copyOfRange(inputs, Math.min(inputs.length, c * quarter),
+                    Math.min(inputs.length, (c + 1) * quarter));
+        }
+        StringNormalizer.normalizeColumns(columns, parallel);
+        long length = 0;
+        for (String[] column : columns) {
+            length += totalLength(column);
+        }
+        return length;
+    }
+
+    private static Path writeCorpusFile(String[] inputs) {
+        try {
+            Path file = Files.createTempFile("normalizer-benchmark", ".txt");
+            file.toFile().deleteOnExit();
+            file.resolveSibling(file.getFileName() + ".out").toFile().deleteOnExit();
+            Files.writeString(file, String.join("\n", inputs), StandardCharsets.UTF_8);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Samples of each kind of text, combined into short inputs and 1 MB inputs
+    private static final String[] ASCII_WORDS = {
+            "Springfield", "Main Street", "Portland", "Oak Avenue", "Boston", "Suite 400",
+            "Chicago", "Riverside Drive", "Denver", "PO Box 1234", "Austin", "North Road"
+    };
+    // English prose with the odd accented loanword, long ASCII runs between rare non-ASCII chars
+    private static final String[] MOSTLY_ASCII_PROSE = {
+            "The quarterly report was reviewed by the committee and approved without further changes.",
+            "Please forward the signed contract to the legal department before the end of the week.",
+            "We met at the café on the corner and talked about the résumé for almost an hour.",
+            "Shipping is free for all orders over fifty dollars within the continental United States.",
+            "Her naïve question about the façade led to a long discussion with the architect.",
+            "The server will be offline for scheduled maintenance on Saturday between two and four."
+    };
+    private static final String[] LATIN1_NAMES = {
+            "Sørensen", "Ærø", "Blåbær", "Straße", "François", "Yücetürk", "Güzelbahçe", "São Paulo",
+            "Düsseldorf", "Montréal", "Þorlákshöfn", "Łódź", "Kraków", "Jyväskylä", "Müller", "Cádiz",
+            "Škoda", "Dvořák", "Ørsted", "Ñuñoa", "Zürich", "Brăila", "Timișoara", "Győr"
+    };
+    private static final String[] CYRILLIC_GREEK_PROSE = {
+            "Съешь же ещё этих мягких французских булок, да выпей чаю.",
+            "Москва — столица России, крупнейший по численности населения город страны.",
+            "Широкая электрификация южных губерний даст мощный толчок подъёму сельского хозяйства.",
+            "Ξεσκεπάζω την ψυχοφθόρα βδελυγμία.",
+            "Η Αθήνα είναι η πρωτεύουσα και μεγαλύτερη πόλη της Ελλάδας.",
+            "Γαζέες καὶ μυρτιὲς δὲν θὰ βρῶ πιὰ στὸ χρυσαφὶ ξέφωτο."
+    };
+    private static final String[] CJK_TEXT = {
+            "成田市", "堺市", "東京都千代田区丸の内一丁目", "大阪府大阪市北区梅田", "北京市海淀区中关村大街",
+            "서울특별시 강남구 테헤란로", "上海市浦东新区陆家嘴环路", "京都市左京区吉田本町"
+    };
+    private static final String[] EMOJI_TEXT = {
+            "Party time 🎉🎉", "👍🏽 looks good", "Coffee ☕ and 🥐 at 9", "😀😃😄😁😆", "🇩🇰 Denmark 🇯🇵 Japan",
+            "Family: 👨‍👩‍👧‍👦", "𝔘𝔫𝔦𝔠𝔬𝔡𝔢 𝕞𝕒𝕥𝕙", "Rocket 🚀 to the 🌕"
+    };
+
+    private static final Map<String, String[]> corpora = new LinkedHashMap<>();
+    static {
+        addCorpus("ascii", ASCII_WORDS);
+        addCorpus("mostly-ascii", MOSTLY_ASCII_PROSE);
+        addCorpus("latin1-names", LATIN1_NAMES);
+        addCorpus("cyrillic-greek", CYRILLIC_GREEK_PROSE);
+        addCorpus("cjk", CJK_TEXT);
+        addCorpus("emoji", EMOJI_TEXT);
+    }
+
+    // Register a short-input corpus and a 1 MB corpus built from the same samples
+    private static void addCorpus(String name, String[] samples) {
+        Random random = new Random(name.hashCode());
+        String[] shortInputs = new String[1024];
+        for (int i = 0; i < shortInputs.length; i++) {
+            shortInputs[i] = samples[random.nextInt(samples.length)];
+        }
+        corpora.put(name + "/short", shortInputs);
+
+        StringBuilder large = new StringBuilder(LARGE_INPUT_CHARS + 128);
+        while (large.length() < LARGE_INPUT_CHARS) {
+            large.append(samples[random.nextInt(samples.length)]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        corpora.put(name + "/1mb", new String[]{large.toString()});
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 3 && args[0].equals(RUN_ONE)) {
+            runOne(args[1], args[2]);
+            return;
+        }
+        String benchmarkFilter = args.length > 0 ? args[0] : "";
+        String corpusFilter = args.length > 1 ? args[1] : "";
+
+        // Memory the default folding (decompositions plus replacements) keeps on the heap
+        ReplacementTable folding = NormalizerProfile.defaultProfile().foldingTable();
+        System.out.printf("Folding table: %d code points, %.1f KB%n%n", folding.size(), folding.footprintBytes() / 1024.0);
+        System.out.printf("%-32s %-22s %14s %14s %14s%n", "Benchmark", "Corpus", "ops/s", "ns/op", "B/op");
+        List<String> names = new ArrayList<>(benchmarks.keySet());
+        names.addAll(batchBenchmarks.keySet());
+        for (String benchmark : names) {
+            if (!benchmark.contains(benchmarkFilter)) {
+                continue;
+            }
+            for (String corpus : corpora.keySet()) {
+                if (!corpus.contains(corpusFilter)) {
+                    continue;
+                }
+                if (FORK) {
+                    fork(benchmark, corpus);
+                } else {
+                    runOne(benchmark, corpus);
+                }
+            }
+        }
+    }
+
+    // Method to run one benchmark/corpus pair in a new JVM started like this one, which prints its result line
+    private static void fork(String benchmark, String corpus) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(NormalizerBenchmark.class.getName());
+        command.add(RUN_ONE);
+        command.add(benchmark);
+        command.add(corpus);
+        int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Benchmark " + benchmark + " on " + corpus + " failed with exit code "
+                    + exitCode + ".");
+        }
+    }
+
+    private static void runOne(String benchmark, String corpus) {
+        String[] inputs = corpora.get(corpus);
+        Result result = batchBenchmarks.containsKey(benchmark)
+                ? run(batchBenchmarks.get(benchmark), new String[][]{inputs}, inputs.length)
+                : run(benchmarks.get(benchmark), inputs, 1);
+        System.out.printf("%-32s %-22s %14.1f %14.1f %14.1f%n", benchmark, corpus,
+                result.opsPerSecond, result.nanosPerOp, result.bytesPerOp);
+    }
+
+    // Method to warm up, then measure a benchmark over several rounds and keep the best round
+    // valuesPerOp is how many values one call handles, results are per value
+    private static <T> Result run(ToLongFunction<T> operation, T[] inputs, int valuesPerOp) {
+        measure(operation, inputs, WARMUP_MILLIS, valuesPerOp);
+        Result best = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            Result result = measure(operation, inputs, MEASURE_MILLIS, valuesPerOp);
+            if (best == null || result.opsPerSecond > best.opsPerSecond) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    private static <T> Result measure(ToLongFunction<T> operation, T[] inputs, long millis, int valuesPerOp) {
+        int batch = inputs.length == 1 ? 1 : 64;
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        long checksum = 0;
+        long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long now;
+        do {
+            // Check the clock once per batch to keep timing overhead off short inputs
+            for (int i = 0; i < batch; i++) {
+                checksum += operation.applyAsLong(inputs[(int) (ops++ % inputs.length)]);
+            }
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        sink += checksum;
+
+        double seconds = (now - start) / 1e9;
+        double values = (double) ops * valuesPerOp;
+        return new Result(values / seconds, (now - start) / values, allocated / values);
+    }
+
+    // Writer that only counts chars, so streaming benchmarks measure the normalizer rather than the sink
+    private static final class CountingWriter extends Writer {
+        long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public Writer append(CharSequence text, int start, int end) {
+            count += end - start;
+            return this;
+        }
+
+        @Override
+        public Writer append(CharSequence text) {
+            count += text.length();
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class CountingChannel implements WritableByteChannel {
+        long count;
+
+        @Override
+        public int write(ByteBuffer buffer) {
+            int length = buffer.remaining();
+            buffer.position(buffer.limit());
+            count += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Result {
+        final double opsPerSecond;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Result(double opsPerSecond, double nanosPerOp, double bytesPerOp) {
+            this.opsPerSecond = opsPerSecond;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+}
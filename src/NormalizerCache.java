@@ -0,0 +1,339 @@
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Opt-in bounded cache in front of the StringNormalizer methods, for data where the same values repeat a lot.
+// Reads are a lock-free ConcurrentHashMap lookup. Eviction is CLOCK (second chance) with TinyLFU admission:
+// a new entry only displaces the eviction victim if it has been requested more often recently,
+// so one-off values cannot flush out the popular ones.
+// The bound is a weight in chars (input plus output length of every cached entry).
+//
+// A hit doesn't touch the eviction state itself. It drops the node into a small read buffer picked by thread,
+// and whoever gets evictionLock next replays the buffered reads into the sketch and the reference bits.
+// Buffers are lossy, a read that finds its buffer full is simply not recorded, which only makes the
+// frequency estimates a sample. Hot keys thus never make threads write to the same memory.
+public class NormalizerCache {
+    private static final int OPERATION_DIACRITICS = 0;
+    private static final int OPERATION_NON_ASCII = 1;
+    private static final int OPERATION_LOOKUP = 2;
+
+    private final long maximumWeight;
+    private final ConcurrentHashMap<Key, Node> entries = new ConcurrentHashMap<>();
+    private final ReadBuffer[] readBuffers;
+
+    // Eviction state, only touched while holding evictionLock
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final ArrayDeque<Node> clock = new ArrayDeque<>();
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public NormalizerCache(long maximumWeight) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive.");
+        }
+        this.maximumWeight = maximumWeight;
+        // Size the sketch for entries of around 16 chars of input plus output
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, maximumWeight / 16)));
+        this.readBuffers = new ReadBuffer[Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    // Cached StringNormalizer.replaceDiacritics
+    public String replaceDiacritics(String input) {
+        if (input == null) {
+            return null;
+        }
+        return get(new Key(OPERATION_DIACRITICS, null, input), () -> StringNormalizer.replaceDiacritics(input));
+    }
+
+    // Cached StringNormalizer.replaceNonAscii
+    public String replaceNonAscii(String input) {
+        return get(new Key(OPERATION_NON_ASCII, null, Objects.requireNonNull(input)),
+                () -> StringNormalizer.replaceNonAscii(input));
+    }
+
+    // Cached StringNormalizer.nonAsciiLookup, entries for different modes never collide
+    public String nonAsciiLookup(String input, String mode) {
+        return get(new Key(OPERATION_LOOKUP, mode, Objects.requireNonNull(input)),
+                () -> StringNormalizer.nonAsciiLookup(input, mode));
+    }
+
+    private String get(Key key, Supplier<String> normalizer) {
+        Node node = entries.get(key);
+        if (node != null) {
+            recordRead(node);
+            hits.increment();
+            return node.value;
+        }
+        misses.increment();
+        String value = normalizer.get();
+        long entryWeight = (long) key.input.length() + value.length();
+        if (entryWeight <= maximumWeight) {
+            admit(new Node(key, value, (int) entryWeight));
+        }
+        return value;
+    }
+
+    private void recordRead(Node node) {
+        int index = Long.hashCode(Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) & (readBuffers.length - 1);
+        if (readBuffers[index].offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // Replay the buffered reads, with evictionLock held
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            // At most one buffer's worth, so readers that keep adding can't hold the drain up
+            for (int i = 0; i < ReadBuffer.SIZE; i++) {
+                Node node = buffer.poll();
+                if (node == null) {
+                    break;
+                }
+                sketch.increment(node.key.hash);
+                node.referenced = true;
+            }
+        }
+    }
+
+    private void admit(Node candidate) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            sketch.increment(candidate.key.hash);
+            if (entries.containsKey(candidate.key)) {
+                return; // Another thread cached it first
+            }
+            boolean admitted = false;
+            // Each entry gets one second chance per pass, so this cannot spin on busy readers
+            int secondChances = clock.size();
+            while (weight + candidate.weight > maximumWeight) {
+                Node victim = clock.poll();
+                if (victim.referenced && secondChances-- > 0) {
+                    victim.referenced = false;
+                    clock.add(victim);
+                    continue;
+                }
+                if (!admitted) {
+                    if (sketch.frequency(candidate.key.hash) <= sketch.frequency(victim.key.hash)) {
+                        clock.addFirst(victim);
+                        rejections.increment();
+                        return;
+                    }
+                    admitted = true;
+                }
+                entries.remove(victim.key);
+                weight -= victim.weight;
+                evictions.increment();
+            }
+            entries.put(candidate.key, candidate);
+            clock.add(candidate);
+            weight += candidate.weight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Method to drop every entry, counters are kept
+    public void clear() {
+        evictionLock.lock();
+        try {
+            entries.clear();
+            clock.clear();
+            weight = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    // Number of computed results that were not cached because the admission policy preferred the victim
+    public long rejectionCount() {
+        return rejections.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long weight() {
+        evictionLock.lock();
+        try {
+            return weight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NormalizerCache{size=" + size() + ", weight=" + weight() + "/" + maximumWeight
+                + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + ", rejections=" + rejectionCount() + "}";
+    }
+
+    private static final class Key {
+        final int operation;
+        final String mode;
+        final String input;
+        final int hash;
+
+        Key(int operation, String mode, String input) {
+            this.operation = operation;
+            this.mode = mode;
+            this.input = input;
+            this.hash = 31 * (31 * operation + Objects.hashCode(mode)) + input.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && operation == other.operation
+                    && Objects.equals(mode, other.mode) && input.equals(other.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Node {
+        final Key key;
+        final String value;
+        final int weight;
+        boolean referenced; // Only touched while holding evictionLock
+
+        Node(Key key, String value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    // Bounded, lossy buffer of reads waiting to be replayed. Any thread may offer, only the holder of
+    // evictionLock polls.
+    private static final class ReadBuffer {
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads;
+
+        // Method to add a read, or drop it if the buffer is full; returns whether the buffer wants draining
+        boolean offer(Node node) {
+            long tail = writes.get();
+            long size = tail - reads;
+            if (size >= SIZE) {
+                return true;
+            }
+            if (writes.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & MASK), node);
+            }
+            return size + 1 >= SIZE / 2;
+        }
+
+        // Method to take the oldest read, or null if there is none or its writer hasn't stored it yet
+        Node poll() {
+            long head = reads;
+            if (head == writes.get()) {
+                return null;
+            }
+            Node node = slots.getAndSet((int) (head & MASK), null);
+            if (node != null) {
+                reads = head + 1;
+            }
+            return node;
+        }
+    }
+
+    // Count-min sketch of 4-bit counters estimating how often each key was requested recently.
+    // Counters are halved once enough increments have been seen, so old popularity fades.
+    // Only touched while holding evictionLock.
+    private static final class FrequencySketch {
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int[] SEEDS = {0x97cb3127, 0xb2c5ef07, 0x4fd7a5a1, 0x2545f491};
+
+        private final long[] table;
+        private final int counterMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int longs = Integer.highestOneBit(Math.max(4, expectedEntries / 4) - 1) << 1;
+            this.table = new long[longs];
+            this.counterMask = longs * 16 - 1;
+            this.sampleSize = 10 * expectedEntries;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int counter = indexOf(hash, row);
+                int index = counter >>> 4;
+                int shift = (counter & 15) << 2;
+                long value = table[index];
+                if (((value >>> shift) & 0xF) < 0xF) {
+                    table[index] = value + (1L << shift);
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 0xF;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int counter = indexOf(hash, row);
+                frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xF));
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            h ^= h >>> 16;
+            return h & counterMask;
+        }
+
+        private void reset() {
+            additions = 0;
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+        }
+    }
+}
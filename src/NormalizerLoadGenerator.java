@@ -0,0 +1,128 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Load generator for NormalizerServer. Opens a number of connections, each on its own virtual thread,
+// and sends normalize requests with up to pipeline-depth of them in flight per connection.
+// Reports throughput and the latency distribution (from sending a request to reading its response).
+//
+// Usage: java NormalizerLoadGenerator [port] [connections] [requests-per-connection] [pipeline-depth]
+//        (default 7070, 64, 10000, 16)
+public class NormalizerLoadGenerator {
+    private static final String[] SAMPLES = {
+            "Sørensen", "Straße", "François Müller", "Łódź", "Dvořák", "São Paulo", "Þorlákshöfn",
+            "Москва — столица России", "Η Αθήνα είναι η πρωτεύουσα", "東京都千代田区", "Zürich ✓",
+            "plain ascii text", "Crème brûlée à la française, s'il vous plaît"
+    };
+
+    // Method to run one connection's requests, returns each request's latency in nanoseconds
+    private static long[] runConnection(int port, int requests, int pipelineDepth, int seed) throws Exception {
+        byte[][] payloads = new byte[SAMPLES.length][];
+        for (int i = 0; i < SAMPLES.length; i++) {
+            payloads[i] = SAMPLES[i].getBytes(StandardCharsets.UTF_8);
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 << 10));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 << 10));
+            Semaphore window = new Semaphore(pipelineDepth);
+            AtomicLongArray sendTimes = new AtomicLongArray(requests);
+            long[] latencies = new long[requests];
+            AtomicReference<IOException> readFailure = new AtomicReference<>();
+
+            // Responses come back in request order, so the reader matches them up by position
+            Thread reader = Thread.ofVirtual().start(() -> {
+                try {
+                    for (int i = 0; i < requests; i++) {
+                        int length = in.readInt();
+                        byte status = in.readByte();
+                        in.readFully(new byte[length - 1]);
+                        latencies[i] = System.nanoTime() - sendTimes.get(i);
+                        if (status != NormalizerServer.STATUS_OK) {
+                            throw new IOException("Request " + i + " failed.");
+                        }
+                        window.release();
+                    }
+                } catch (IOException e) {
+                    readFailure.set(e); // Rethrown once the reader is joined, its latencies are incomplete
+                    window.release(requests); // Unblock the sender, which then fails on the closed socket
+                    try {
+                        in.close(); // Closes the socket
+                    } catch (IOException ignored) {
+                        // Already failing
+                    }
+                }
+            });
+            try {
+                for (int i = 0; i < requests; i++) {
+                    window.acquire();
+                    sendTimes.set(i, System.nanoTime());
+                    NormalizerServer.writeFrame(out, NormalizerServer.OP_NORMALIZE, payloads[(seed + i) % payloads.length]);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                in.close(); // Closes the socket, so the reader stops too
+                reader.join();
+                // A failed read closes the socket, which is then why sending failed
+                IOException failure = readFailure.get();
+                if (failure == null) {
+                    throw e;
+                }
+                failure.addSuppressed(e);
+                throw failure;
+            }
+            reader.join();
+            if (readFailure.get() != null) {
+                throw readFailure.get();
+            }
+            return latencies;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : NormalizerServer.DEFAULT_PORT;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int pipelineDepth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        long start = System.nanoTime();
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                int seed = c;
+                results.add(executor.submit(() -> runConnection(port, requests, pipelineDepth, seed)));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = new long[connections * requests];
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(results.get(c).get(), 0, latencies, c * requests, requests);
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%d connections x %d requests, pipeline depth %d%n", connections, requests, pipelineDepth);
+        System.out.printf("Throughput: %.0f requests/s%n", latencies.length / seconds);
+        System.out.printf("Latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+                percentile(latencies, 0.999) / 1e3, latencies[latencies.length - 1] / 1e3);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,396 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Optional metrics for the StringNormalizer hot paths, off unless the JVM is started with
+// -Dnormalizer.metrics=true. ENABLED is a static final, so when it is off the JIT folds every
+// "if (NormalizerMetrics.ENABLED)" away and the instrumented methods cost nothing extra.
+//
+// When on, calls to replaceDiacritics(String), normalize(String) and nonAsciiLookup(String, ...) are counted and
+// timed, and every code point that gets folded or escaped on any path is counted. All counters are LongAdders,
+// so threads don't contend on them. Calls slower than -Dnormalizer.metrics.slowCallMicros (default 1000)
+// are also emitted as JFR events. Read the numbers through snapshot() or JMX (StringNormalizer:type=Metrics).
+public final class NormalizerMetrics {
+    static final boolean ENABLED = Boolean.getBoolean("normalizer.metrics");
+
+    private static final long SLOW_CALL_NANOS = Long.getLong("normalizer.metrics.slowCallMicros", 1000) * 1000;
+    // Latency bucket b counts calls taking [2^b, 2^(b+1)) ns, the last one everything slower
+    private static final int LATENCY_BUCKETS = 40;
+    private static final int TOP_CODE_POINTS = 20;
+
+    public enum Operation {
+        REPLACE_DIACRITICS,
+        NORMALIZE,
+        REPLACE_NON_ASCII,
+        NON_ASCII_LOOKUP
+    }
+
+    private static final OperationCounters[] operations = new OperationCounters[Operation.values().length];
+    private static final CodePointCounter folded = new CodePointCounter();
+    private static final CodePointCounter escaped = new CodePointCounter();
+
+    static {
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new OperationCounters();
+        }
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(),
+                        new ObjectName("StringNormalizer:type=Metrics"));
+            } catch (JMException e) {
+                // Already registered, e.g. by another class loader; snapshot() still works
+            }
+        }
+    }
+
+    private NormalizerMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // Record one call that started at startNanos. A call that returned its input unchanged had pure ASCII input.
+    static void recordCall(Operation operation, String input, String result, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        OperationCounters counters = operations[operation.ordinal()];
+        counters.calls.increment();
+        if (input != null) {
+            counters.inputChars.add(input.length());
+            if (result == input) {
+                counters.asciiCalls.increment();
+            }
+        }
+        counters.latency[latencyBucket(elapsed)].increment();
+        if (elapsed >= SLOW_CALL_NANOS) {
+            counters.slowCalls.increment();
+            SlowCallEvent event = new SlowCallEvent();
+            if (event.isEnabled()) {
+                event.operation = operation.name();
+                event.inputLength = input == null ? 0 : input.length();
+                event.elapsed = elapsed;
+                event.commit();
+            }
+        }
+    }
+
+    // A code point was replaced through the folding table
+    static void recordFolded(int cp) {
+        folded.increment(cp);
+    }
+
+    // A code point was written as an escape
+    static void recordEscaped(int cp) {
+        escaped.increment(cp);
+    }
+
+    // Method to read all counters, with the topN most folded and escaped code points
+    public static Snapshot snapshot(int topN) {
+        Map<Operation, OperationSnapshot> byOperation = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            byOperation.put(operation, operations[operation.ordinal()].snapshot());
+        }
+        return new Snapshot(byOperation, folded.top(topN), escaped.top(topN));
+    }
+
+    public static Snapshot snapshot() {
+        return snapshot(TOP_CODE_POINTS);
+    }
+
+    // Method to zero every counter
+    public static void reset() {
+        for (OperationCounters counters : operations) {
+            counters.reset();
+        }
+        folded.reset();
+        escaped.reset();
+    }
+
+    private static int latencyBucket(long nanos) {
+        return Math.min(LATENCY_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos | 1));
+    }
+
+    // Counters for one operation at one point in time
+    public static final class OperationSnapshot {
+        private final long calls;
+        private final long asciiCalls;
+        private final long inputChars;
+        private final long slowCalls;
+        private final long[] latencyBuckets;
+
+        OperationSnapshot(long calls, long asciiCalls, long inputChars, long slowCalls, long[] latencyBuckets) {
+            this.calls = calls;
+            this.asciiCalls = asciiCalls;
+            this.inputChars = inputChars;
+            this.slowCalls = slowCalls;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        public long calls() {
+            return calls;
+        }
+
+        // Calls whose input was pure ASCII, so nothing needed changing
+        public long asciiCalls() {
+            return asciiCalls;
+        }
+
+        public long inputChars() {
+            return inputChars;
+        }
+
+        public long slowCalls() {
+            return slowCalls;
+        }
+
+        // Upper bound of the power of two bucket holding the given quantile (0.5 for the median), 0 without calls
+        public long latencyPercentileNanos(double quantile) {
+            long total = 0;
+            for (long count : latencyBuckets) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int bucket = 0; bucket < latencyBuckets.length; bucket++) {
+                seen += latencyBuckets[bucket];
+                if (seen >= rank) {
+                    return 1L << (bucket + 1);
+                }
+            }
+            return 1L << latencyBuckets.length;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + calls + ", ascii=" + asciiCalls + ", chars=" + inputChars + ", slow=" + slowCalls
+                    + ", p50<=" + latencyPercentileNanos(0.5) + "ns, p99<=" + latencyPercentileNanos(0.99) + "ns";
+        }
+    }
+
+    // All counters at one point in time. Code point maps are ordered by count, highest first.
+    public static final class Snapshot {
+        private final Map<Operation, OperationSnapshot> operations;
+        private final Map<Integer, Long> topFolded;
+        private final Map<Integer, Long> topEscaped;
+
+        Snapshot(Map<Operation, OperationSnapshot> operations, Map<Integer, Long> topFolded,
+                 Map<Integer, Long> topEscaped) {
+            this.operations = Collections.unmodifiableMap(operations);
+            this.topFolded = Collections.unmodifiableMap(topFolded);
+            this.topEscaped = Collections.unmodifiableMap(topEscaped);
+        }
+
+        public OperationSnapshot operation(Operation operation) {
+            return operations.get(operation);
+        }
+
+        public Map<Integer, Long> topFoldedCodePoints() {
+            return topFolded;
+        }
+
+        public Map<Integer, Long> topEscapedCodePoints() {
+            return topEscaped;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("NormalizerMetrics{");
+            for (Map.Entry<Operation, OperationSnapshot> entry : operations.entrySet()) {
+                sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("; ");
+            }
+            sb.append("folded=").append(codePointKeys(topFolded));
+            sb.append(", escaped=").append(codePointKeys(topEscaped));
+            return sb.append('}').toString();
+        }
+    }
+
+    private static final class OperationCounters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder asciiCalls = new LongAdder();
+        final LongAdder inputChars = new LongAdder();
+        final LongAdder slowCalls = new LongAdder();
+        final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+
+        OperationCounters() {
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new LongAdder();
+            }
+        }
+
+        OperationSnapshot snapshot() {
+            long[] buckets = new long[latency.length];
+            for (int i = 0; i < latency.length; i++) {
+                buckets[i] = latency[i].sum();
+            }
+            return new OperationSnapshot(calls.sum(), asciiCalls.sum(), inputChars.sum(), slowCalls.sum(), buckets);
+        }
+
+        void reset() {
+            calls.reset();
+            asciiCalls.reset();
+            inputChars.reset();
+            slowCalls.reset();
+            for (LongAdder bucket : latency) {
+                bucket.reset();
+            }
+        }
+    }
+
+    // Per code point counters in lazily created pages of 256, keyed by cp >>> 8 like ReplacementTable.
+    // Only a bounded number of distinct code points get their own counter, the rest are not counted.
+    private static final class CodePointCounter {
+        private static final int MAX_TRACKED = 1 << 16;
+
+        private final AtomicReferenceArray<AtomicReferenceArray<LongAdder>> pages =
+                new AtomicReferenceArray<>((Character.MAX_CODE_POINT >>> 8) + 1);
+        private final AtomicInteger tracked = new AtomicInteger();
+
+        void increment(int cp) {
+            AtomicReferenceArray<LongAdder> page = pages.get(cp >>> 8);
+            if (page == null) {
+                pages.compareAndSet(cp >>> 8, null, new AtomicReferenceArray<>(256));
+                page = pages.get(cp >>> 8);
+            }
+            LongAdder counter = page.get(cp & 0xFF);
+            if (counter == null) {
+                if (tracked.get() >= MAX_TRACKED) {
+                    return;
+                }
+                if (page.compareAndSet(cp & 0xFF, null, new LongAdder())) {
+                    tracked.incrementAndGet();
+                }
+                counter = page.get(cp & 0xFF);
+            }
+            counter.increment();
+        }
+
+        Map<Integer, Long> top(int n) {
+            List<long[]> counts = new ArrayList<>();
+            for (int p = 0; p < pages.length(); p++) {
+                AtomicReferenceArray<LongAdder> page = pages.get(p);
+                if (page == null) {
+                    continue;
+                }
+                for (int i = 0; i < 256; i++) {
+                    LongAdder counter = page.get(i);
+                    if (counter != null && counter.sum() > 0) {
+                        counts.add(new long[]{(p << 8) | i, counter.sum()});
+                    }
+                }
+            }
+            counts.sort((a, b) -> Long.compare(b[1], a[1]));
+            Map<Integer, Long> top = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(n, counts.size()); i++) {
+                top.put((int) counts.get(i)[0], counts.get(i)[1]);
+            }
+            return top;
+        }
+
+        void reset() {
+            for (int p = 0; p < pages.length(); p++) {
+                pages.set(p, null);
+            }
+            tracked.set(0);
+        }
+    }
+
+    private static Map<String, Long> codePointKeys(Map<Integer, Long> counts) {
+        Map<String, Long> keyed = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            keyed.put(String.format("U+%04X", entry.getKey()), entry.getValue());
+        }
+        return keyed;
+    }
+
+    private static final class MXBean implements NormalizerMetricsMXBean {
+        private interface Field {
+            long get(OperationSnapshot operation);
+        }
+
+        private static Map<String, Long> byOperation(Field field) {
+            Snapshot snapshot = snapshot(0);
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Operation operation : Operation.values()) {
+                values.put(operation.name(), field.get(snapshot.operation(operation)));
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Long> getCalls() {
+            return byOperation(OperationSnapshot::calls);
+        }
+
+        @Override
+        public Map<String, Long> getAsciiCalls() {
+            return byOperation(OperationSnapshot::asciiCalls);
+        }
+
+        @Override
+        public Map<String, Long> getInputChars() {
+            return byOperation(OperationSnapshot::inputChars);
+        }
+
+        @Override
+        public Map<String, Long> getSlowCalls() {
+            return byOperation(OperationSnapshot::slowCalls);
+        }
+
+        @Override
+        public Map<String, Long> getLatencyP50Nanos() {
+            return byOperation(operation -> operation.latencyPercentileNanos(0.5));
+        }
+
+        @Override
+        public Map<String, Long> getLatencyP99Nanos() {
+            return byOperation(operation -> operation.latencyPercentileNanos(0.99));
+        }
+
+        @Override
+        public Map<String, Long> getTopFoldedCodePoints() {
+            return codePointKeys(folded.top(TOP_CODE_POINTS));
+        }
+
+        @Override
+        public Map<String, Long> getTopEscapedCodePoints() {
+            return codePointKeys(escaped.top(TOP_CODE_POINTS));
+        }
+
+        @Override
+        public void reset() {
+            NormalizerMetrics.reset();
+        }
+    }
+
+    @Name("StringNormalizer.SlowCall")
+    @Label("Slow Normalizer Call")
+    @Category("StringNormalizer")
+    static final class SlowCallEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Input Length")
+        int inputLength;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
@@ -0,0 +1,25 @@
+import java.util.Map;
+
+// JMX view of NormalizerMetrics, registered as StringNormalizer:type=Metrics when metrics are enabled.
+// Maps are keyed by operation name, or by code point as U+XXXX.
+public interface NormalizerMetricsMXBean {
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getAsciiCalls();
+
+    Map<String, Long> getInputChars();
+
+    Map<String, Long> getSlowCalls();
+
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    // Most frequently folded code points (special replacements and decompositions)
+    Map<String, Long> getTopFoldedCodePoints();
+
+    // Most frequently escaped code points, the ones no replacement or decomposition covers
+    Map<String, Long> getTopEscapedCodePoints();
+
+    void reset();
+}
@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// An immutable set of transliteration rules, compiled once into a folding table. Profiles are safe to share
+// between threads and cost nothing to hand around, so a rule change is just building a new profile and
+// swapping it in, see ProfiledNormalizer.
+//
+// A rule maps one code point to its replacement. Decomposition and mark removal happen first as usual,
+// then the rules apply to what is left, except that a rule for a precomposed character itself (for example
+// ü -> ue) wins over decomposing it. Such a rule also applies to the decomposed form (u followed by U+0308),
+// so text folds the same whichever way it is composed. ASCII is always copied through unchanged, so there
+// are no rules for it.
+public final class NormalizerProfile {
+    private final Map<Integer, String> replacements;
+    private final ReplacementTable foldingTable;
+    // Code points a combining sequence must start with to be composed before folding, null if no rule needs it
+    private final BitSet composingStarts;
+
+    NormalizerProfile(Map<Integer, String> replacements) {
+        this.replacements = Collections.unmodifiableMap(new HashMap<>(replacements));
+        this.foldingTable = compileFolding(Decompositions.table(), this.replacements);
+        this.composingStarts = composingStarts(Decompositions.table(), this.replacements);
+    }
+
+    // The rules StringNormalizer uses
+    public static NormalizerProfile defaultProfile() {
+        return StringNormalizer.defaultProfile();
+    }
+
+    // Method to start a profile from the default rules
+    public static Builder builder() {
+        return new Builder(defaultProfile().replacements);
+    }
+
+    // Method to start a profile from this one's rules
+    public Builder toBuilder() {
+        return new Builder(replacements);
+    }
+
+    // The replacement rules by code point, read-only
+    public Map<Integer, String> replacements() {
+        return replacements;
+    }
+
+    // Method to replace diacritics using this profile's rules
+    public String replaceDiacritics(String input) {
+        return StringNormalizer.fold(input, foldingTable, composingStarts, false);
+    }
+
+    // Method to replace diacritics and then HTML-escape non-ASCII characters using this profile's rules
+    public String normalize(String input) {
+        return StringNormalizer.fold(input, foldingTable, composingStarts, true);
+    }
+
+    ReplacementTable foldingTable() {
+        return foldingTable;
+    }
+
+    // The base letters of precomposed characters with a rule of their own (u for ü), plus every precomposed
+    // character on those bases (ü itself, ǘ, ...) since marks after them can compose further
+    private static BitSet composingStarts(Map<Integer, String> decompositions, Map<Integer, String> replacements) {
+        BitSet bases = new BitSet();
+        for (int cp : replacements.keySet()) {
+            String decomposition = decompositions.get(cp);
+            if (decomposition != null && !decomposition.isEmpty()) {
+                bases.set(decomposition.codePointAt(0));
+            }
+        }
+        if (bases.isEmpty()) {
+            return null;
+        }
+        BitSet starts = (BitSet) bases.clone();
+        for (Map.Entry<Integer, String> entry : decompositions.entrySet()) {
+            String decomposition = entry.getValue();
+            if (!decomposition.isEmpty() && bases.get(decomposition.codePointAt(0))) {
+                starts.set(entry.getKey());
+            }
+        }
+        return starts;
+    }
+
+    // Combine the decompositions and replacements into one table of full folding results
+    private static ReplacementTable compileFolding(Map<Integer, String> decompositions, Map<Integer, String> replacements) {
+        Map<Integer, String> folding = new HashMap<>(replacements);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, String> entry : decompositions.entrySet()) {
+            if (replacements.containsKey(entry.getKey())) {
+                continue; // An explicit rule for the character itself wins
+            }
+            String decomposition = entry.getValue();
+            sb.setLength(0);
+            for (int i = 0; i < decomposition.length(); ) {
+                int part = decomposition.codePointAt(i);
+                String replacement = replacements.get(part);
+                if (replacement == null) {
+                    sb.appendCodePoint(part);
+                } else {
+                    sb.append(replacement);
+                }
+                i += Character.charCount(part);
+            }
+            folding.put(entry.getKey(), sb.toString());
+        }
+        return ReplacementTable.compile(folding);
+    }
+
+    // Mutable collector of rules, not thread-safe. Every build() compiles a new, independent profile.
+    public static final class Builder {
+        private final Map<Integer, String> replacements;
+
+        private Builder(Map<Integer, String> base) {
+            this.replacements = new HashMap<>(base);
+        }
+
+        // Method to add or override the rule for one code point
+        public Builder put(int codePoint, String replacement) {
+            if (!Character.isValidCodePoint(codePoint)) {
+                throw new IllegalArgumentException("Invalid code point " + codePoint + ".");
+            }
+            if (codePoint <= 127) {
+                // Runs of ASCII skip the folding table entirely, a rule here would only apply to some of them
+                throw new IllegalArgumentException("ASCII code point U+" + hex(codePoint) + " cannot have a rule.");
+            }
+            if (replacement == null) {
+                throw new IllegalArgumentException("Replacement for U+" + hex(codePoint) + " is null.");
+            }
+            replacements.put(codePoint, replacement);
+            return this;
+        }
+
+        public Builder putAll(Map<Integer, String> rules) {
+            for (Map.Entry<Integer, String> rule : rules.entrySet()) {
+                put(rule.getKey(), rule.getValue());
+            }
+            return this;
+        }
+
+        // Method to drop the rule for one code point, so it only gets decomposed
+        public Builder remove(int codePoint) {
+            replacements.remove(codePoint);
+            return this;
+        }
+
+        // Method to drop every rule, including the defaults
+        public Builder clear() {
+            replacements.clear();
+            return this;
+        }
+
+        // Method to add rules from a properties file. Keys are either the character itself or U+XXXX,
+        // values are the replacement, for example:
+        //   ü = ue
+        //   U+00DC = Ue
+        public Builder load(Reader reader) throws IOException {
+            Properties rules = new Properties();
+            rules.load(reader);
+            for (String key : rules.stringPropertyNames()) {
+                put(parseCodePoint(key), rules.getProperty(key));
+            }
+            return this;
+        }
+
+        // Method to add rules from a UTF-8 properties file, see load(Reader)
+        public Builder load(Path file) throws IOException {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return load(reader);
+            }
+        }
+
+        // Method to compile the rules into an immutable profile
+        public NormalizerProfile build() {
+            return new NormalizerProfile(replacements);
+        }
+
+        private static String hex(int codePoint) {
+            return String.format("%04X", codePoint);
+        }
+
+        private static int parseCodePoint(String key) {
+            if (key.length() > 2 && (key.startsWith("U+") || key.startsWith("u+"))) {
+                try {
+                    return Integer.parseInt(key.substring(2), 16);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid code point key '" + key + "'.", e);
+                }
+            }
+            if (key.isEmpty() || key.codePointCount(0, key.length()) != 1) {
+                throw new IllegalArgumentException("Rule key '" + key + "' must be one character or U+XXXX.");
+            }
+            return key.codePointAt(0);
+        }
+    }
+}
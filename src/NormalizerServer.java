@@ -0,0 +1,289 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Standalone normalization service on localhost, so several applications can share one warmed-up JVM.
+//
+// Protocol: length-prefixed frames over TCP, [int length][byte tag][length - 1 bytes of UTF-8].
+// A request's tag is the operation (OP_*), a response's tag is STATUS_OK with the result or STATUS_ERROR
+// with a message. Clients may pipeline: send any number of requests without waiting, responses come back
+// in request order.
+//
+// Every connection is served by a pair of virtual threads, one reading requests and one writing responses.
+// Requests from all connections go into one queue, and batch threads drain whatever has piled up (up to
+// MAX_BATCH) and normalize it in one go through StringNormalizer.normalizeAll. Under light load a request
+// is handled on its own right away, under heavy load requests coalesce into batches by themselves.
+//
+// Usage: java NormalizerServer [port] [batch-threads]   (default 7070, one per core)
+public class NormalizerServer implements Closeable {
+    static final byte OP_NORMALIZE = 0;
+    static final byte OP_REPLACE_DIACRITICS = 1;
+    static final byte OP_REPLACE_NON_ASCII = 2;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final int MAX_FRAME_SIZE = 16 << 20;
+    static final int DEFAULT_PORT = 7070;
+
+    private static final int MAX_BATCH = 256;
+    // Requests a connection may have in flight before the server stops reading from it
+    private static final int MAX_PIPELINED = 1024;
+    private static final CompletableFuture<String> END_OF_REQUESTS = CompletableFuture.completedFuture(null);
+
+    private final ServerSocket serverSocket;
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Thread> batchThreads = new ArrayList<>();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private volatile boolean closed;
+
+    public NormalizerServer(int port, int batchThreads) throws IOException {
+        this.serverSocket = new ServerSocket(port, 256, InetAddress.getLoopbackAddress());
+        for (int i = 0; i < batchThreads; i++) {
+            this.batchThreads.add(Thread.ofPlatform().daemon().name("normalizer-batch-" + i).start(this::runBatches));
+        }
+        Thread.ofPlatform().daemon().name("normalizer-accept").start(this::acceptConnections);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long requestCount() {
+        return requestCount.sum();
+    }
+
+    public long batchCount() {
+        return batchCount.sum();
+    }
+
+    // Method to stop accepting connections and drop the open ones, requests in flight get no response
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        connections.shutdownNow(); // Interrupts every connection's reader and writer
+        for (Thread thread : batchThreads) {
+            thread.interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    connections.execute(() -> serve(socket));
+                } catch (RejectedExecutionException e) {
+                    socket.close(); // Closed while accepting
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Read requests until the client closes the connection, handing each to the batch threads.
+    // A second virtual thread writes the responses as they complete, in request order.
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 << 10));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 << 10));
+            BlockingQueue<CompletableFuture<String>> inFlight = new ArrayBlockingQueue<>(MAX_PIPELINED);
+            Future<?> writer = connections.submit(() -> writeResponses(socket, out, inFlight));
+            try {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break; // Client is done
+                    }
+                    if (length < 1 || length > MAX_FRAME_SIZE) {
+                        throw new IOException("Invalid frame length " + length + ".");
+                    }
+                    byte operation = in.readByte();
+                    byte[] payload = new byte[length - 1];
+                    in.readFully(payload);
+                    CompletableFuture<String> result = new CompletableFuture<>();
+                    if (operation < OP_NORMALIZE || operation > OP_REPLACE_NON_ASCII) {
+                        result.completeExceptionally(new IllegalArgumentException("Unknown operation " + operation + "."));
+                    } else {
+                        requests.add(new Request(operation, new String(payload, StandardCharsets.UTF_8), result));
+                    }
+                    inFlight.put(result);
+                }
+            } finally {
+                inFlight.put(END_OF_REQUESTS);
+                writer.get();
+            }
+        } catch (IOException | ExecutionException e) {
+            if (!closed) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Write responses in request order, flushing whenever nothing else is ready so pipelined responses share packets.
+    // After a write failure the remaining results are still drained, so the reading side never blocks on a full queue.
+    private static void writeResponses(Socket socket, DataOutputStream out, BlockingQueue<CompletableFuture<String>> inFlight) {
+        boolean broken = false;
+        try {
+            while (true) {
+                CompletableFuture<String> result = inFlight.take();
+                if (result == END_OF_REQUESTS) {
+                    break;
+                }
+                byte status = STATUS_OK;
+                String text;
+                try {
+                    text = result.get();
+                } catch (ExecutionException e) {
+                    status = STATUS_ERROR;
+                    text = String.valueOf(e.getCause().getMessage());
+                }
+                if (broken) {
+                    continue;
+                }
+                try {
+                    writeFrame(out, status, text.getBytes(StandardCharsets.UTF_8));
+                    if (inFlight.isEmpty()) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    broken = true;
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                        // Already failing
+                    }
+                }
+            }
+            if (!broken) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Client went away before the last flush
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Take whatever requests have queued up, at most MAX_BATCH, and normalize them together
+    private void runBatches() {
+        List<Request> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed) {
+            try {
+                batch.add(requests.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            requests.drainTo(batch, MAX_BATCH - 1);
+            try {
+                process(batch);
+            } catch (Throwable e) {
+                // Anything that escaped (an OutOfMemoryError on a big batch, ...) fails the requests still pending,
+                // so their connections get an error response instead of waiting forever, and this thread carries on
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            requestCount.add(batch.size());
+            batchCount.increment();
+            batch.clear();
+        }
+    }
+
+    private static void process(List<Request> batch) {
+        int normalizeCount = 0;
+        for (Request request : batch) {
+            if (request.operation == OP_NORMALIZE) {
+                normalizeCount++;
+            }
+        }
+        String[] normalized = new String[normalizeCount];
+        int next = 0;
+        for (Request request : batch) {
+            if (request.operation == OP_NORMALIZE) {
+                normalized[next++] = request.input;
+            }
+        }
+        StringNormalizer.normalizeAll(normalized, normalized);
+
+        next = 0;
+        for (Request request : batch) {
+            try {
+                switch (request.operation) {
+                    case OP_NORMALIZE:
+                        request.result.complete(normalized[next++]);
+                        break;
+                    case OP_REPLACE_DIACRITICS:
+                        request.result.complete(StringNormalizer.replaceDiacritics(request.input));
+                        break;
+                    default:
+                        request.result.complete(StringNormalizer.replaceNonAscii(request.input));
+                        break;
+                }
+            } catch (RuntimeException e) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    static void writeFrame(DataOutputStream out, byte tag, byte[] payload) throws IOException {
+        out.writeInt(payload.length + 1);
+        out.writeByte(tag);
+        out.write(payload);
+    }
+
+    private static final class Request {
+        final byte operation;
+        final String input;
+        final CompletableFuture<String> result;
+
+        Request(byte operation, String input, CompletableFuture<String> result) {
+            this.operation = operation;
+            this.input = input;
+            this.result = result;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        NormalizerServer server = new NormalizerServer(port, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            long batches = server.batchCount();
+            System.out.printf("Served %d requests in %d batches (%.1f per batch)%n", server.requestCount(), batches,
+                    batches == 0 ? 0.0 : (double) server.requestCount() / batches);
+        }));
+        System.out.println("Normalizer server listening on localhost:" + server.port() + " with " + threads
+                + " batch threads");
+        Thread.currentThread().join();
+    }
+}
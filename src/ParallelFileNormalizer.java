@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Normalizes large UTF-8 files in parallel. The input is memory-mapped in windows, cut into chunks at
+// line breaks (or at least at code point starts), and each chunk goes through
+// replaceNonAscii(replaceDiacritics(chunk)) on a ForkJoinPool. Results are written in input order.
+//
+// Usage: java ParallelFileNormalizer <input> <output> [threads]
+public class ParallelFileNormalizer {
+    private static final int CHUNK_SIZE = 4 << 20;
+    private static final int WINDOW_SIZE = 256 << 20;
+    // How far past the target chunk end to look for a line break
+    private static final int LINE_SEARCH_LIMIT = 64 << 10;
+
+    // Method to normalize a UTF-8 file into another file, malformed input becomes U+FFFD
+    public static void normalize(Path input, Path output, int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            // Bound the chunks in flight so memory stays flat however large the file is
+            int maxPending = parallelism * 2;
+            Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+            long windowStart = 0;
+            while (windowStart < size) {
+                // Map a little past the window so the last chunk can be extended to a safe boundary
+                long mappedLength = Math.min(size - windowStart, (long) WINDOW_SIZE + LINE_SEARCH_LIMIT + 4);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, windowStart, mappedLength);
+                boolean lastWindow = windowStart + mappedLength == size;
+                int windowLimit = (int) Math.min(mappedLength, WINDOW_SIZE);
+
+                int chunkStart = 0;
+                while (chunkStart < windowLimit) {
+                    int target = chunkStart + CHUNK_SIZE;
+                    int chunkEnd = chunkBoundary(window, lastWindow ? target : Math.min(target, windowLimit));
+                    ByteBuffer chunk = window.slice(chunkStart, chunkEnd - chunkStart);
+                    pending.add(pool.submit(() -> normalizeChunk(chunk)));
+                    if (pending.size() >= maxPending) {
+                        write(out, pending.poll().join());
+                    }
+                    chunkStart = chunkEnd;
+                }
+                windowStart += chunkStart;
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.poll().join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Find where a chunk aiming to end at target can safely end: just after a nearby line break,
+    // otherwise at the next UTF-8 code point start. Every code point folds on its own,
+    // so either keeps the output identical to normalizing the whole file at once.
+    private static int chunkBoundary(ByteBuffer buffer, int target) {
+        int limit = buffer.limit();
+        if (target >= limit) {
+            return limit;
+        }
+        int searchEnd = Math.min(limit, target + LINE_SEARCH_LIMIT);
+        for (int i = target; i < searchEnd; i++) {
+            if (buffer.get(i - 1) == '\n') {
+                return i;
+            }
+        }
+        int i = target;
+        while (i < limit && (buffer.get(i) & 0xC0) == 0x80) {
+            i++; // Skip UTF-8 continuation bytes
+        }
+        return i;
+    }
+
+    private static byte[] normalizeChunk(ByteBuffer chunk) {
+        String text = StandardCharsets.UTF_8.decode(chunk).toString();
+        String normalized = StringNormalizer.normalize(text);
+        return normalized.getBytes(StandardCharsets.US_ASCII); // Normalized output is always ASCII
+    }
+
+    private static void write(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ParallelFileNormalizer <input> <output> [threads]");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        normalize(input, output, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megabytes = input.toFile().length() / (1024.0 * 1024.0);
+        System.out.printf("Normalized %.1f MB in %.2f s (%.1f MB/s) on %d threads%n",
+                megabytes, seconds, megabytes / seconds, threads);
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.Objects;
+
+// A normalizer bound to a NormalizerProfile that can be replaced at runtime. Each call reads the current
+// profile once from a volatile field, so setProfile takes effect atomically without any locking:
+// a call either sees the old rules or the new ones, never a mix.
+public class ProfiledNormalizer {
+    private volatile NormalizerProfile profile;
+
+    public ProfiledNormalizer() {
+        this(NormalizerProfile.defaultProfile());
+    }
+
+    public ProfiledNormalizer(NormalizerProfile profile) {
+        this.profile = Objects.requireNonNull(profile);
+    }
+
+    public NormalizerProfile getProfile() {
+        return profile;
+    }
+
+    // Method to switch to new rules, calls already running finish with the old ones
+    public void setProfile(NormalizerProfile profile) {
+        this.profile = Objects.requireNonNull(profile);
+    }
+
+    // Method to replace diacritics with the current profile
+    public String replaceDiacritics(String input) {
+        return profile.replaceDiacritics(input);
+    }
+
+    // Method to replace diacritics and HTML-escape non-ASCII characters with the current profile
+    public String normalize(String input) {
+        return profile.normalize(input);
+    }
+}
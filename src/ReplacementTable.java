@@ -0,0 +1,188 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable lookup table from code points to replacement text, compiled once from a code point -> String map.
+// Code points are looked up through a two-level page table keyed by cp >>> 8; pages hold indexes into
+// the entry list, and each entry points at a slice of one shared, packed char[] of replacement text.
+final class ReplacementTable {
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int MAX_REPLACEMENT_LENGTH = 0xFF;
+    private static final int ASCII_ENTRY = 1 << 8;
+    // Entry indexes are stored as chars in the pages, and text offsets in the 23 bits above ASCII_ENTRY
+    private static final int MAX_ENTRIES = Character.MAX_VALUE;
+    private static final int MAX_TEXT_OFFSET = (1 << 23) - 1;
+
+    private final char[][] pages;  // Unmapped pages all share one empty page
+    private final int[] entries;   // (offset << 9) | ASCII_ENTRY if all ASCII | length, index 0 means unmapped
+    private final char[] text;
+    // The same text encoded as UTF-8 for the byte path, entry i is utf8Text[utf8Offsets[i], utf8Offsets[i + 1]).
+    // Entries of up to four bytes are also packed into an int (first byte lowest), to be stored in one write.
+    private final int[] utf8Offsets;
+    private final byte[] utf8Text;
+    private final int[] utf8Packed;
+    private final int size;
+
+    private ReplacementTable(char[][] pages, int[] entries, char[] text, int size) {
+        this.pages = pages;
+        this.entries = entries;
+        this.text = text;
+        this.size = size;
+
+        // Encode each entry on its own, so unpaired surrogates at entry edges never join up
+        this.utf8Offsets = new int[entries.length + 1];
+        byte[][] encoded = new byte[entries.length][];
+        int utf8Length = 0;
+        for (int i = 1; i < entries.length; i++) {
+            encoded[i] = new String(text, entries[i] >>> 9, entries[i] & 0xFF).getBytes(StandardCharsets.UTF_8);
+            utf8Offsets[i] = utf8Length;
+            utf8Length += encoded[i].length;
+        }
+        utf8Offsets[entries.length] = utf8Length;
+        this.utf8Text = new byte[utf8Length];
+        this.utf8Packed = new int[entries.length];
+        for (int i = 1; i < entries.length; i++) {
+            System.arraycopy(encoded[i], 0, utf8Text, utf8Offsets[i], encoded[i].length);
+            for (int j = Math.min(encoded[i].length, 4) - 1; j >= 0; j--) {
+                utf8Packed[i] = (utf8Packed[i] << 8) | (encoded[i][j] & 0xFF);
+            }
+        }
+    }
+
+    // Method to compile a replacement map into a lookup table
+    static ReplacementTable compile(Map<Integer, String> replacements) {
+        char[] emptyPage = new char[PAGE_MASK + 1];
+        char[][] pages = new char[(Character.MAX_CODE_POINT >>> PAGE_SHIFT) + 1][];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = emptyPage;
+        }
+
+        // Identical replacement strings share one entry and one slice of text
+        Map<String, Integer> entryIndexes = new HashMap<>();
+        int[] entries = new int[replacements.size() + 1];
+        StringBuilder text = new StringBuilder();
+        int entryCount = 1;
+
+        for (Map.Entry<Integer, String> mapping : replacements.entrySet()) {
+            int cp = mapping.getKey();
+            String replacement = mapping.getValue();
+            if (!Character.isValidCodePoint(cp)) {
+                throw new IllegalArgumentException("Invalid code point " + cp + ".");
+            }
+            if (replacement.length() > MAX_REPLACEMENT_LENGTH) {
+                throw new IllegalArgumentException("Replacement for U+" + Integer.toHexString(cp).toUpperCase()
+                        + " is longer than " + MAX_REPLACEMENT_LENGTH + " chars.");
+            }
+            Integer index = entryIndexes.get(replacement);
+            if (index == null) {
+                if (entryCount > MAX_ENTRIES) {
+                    throw new IllegalArgumentException("More than " + MAX_ENTRIES + " distinct replacements.");
+                }
+                if (text.length() > MAX_TEXT_OFFSET) {
+                    throw new IllegalArgumentException("Replacements total more than " + MAX_TEXT_OFFSET + " chars.");
+                }
+                index = entryCount++;
+                boolean ascii = true;
+                for (int i = 0; i < replacement.length(); i++) {
+                    ascii &= replacement.charAt(i) <= 127;
+                }
+                entries[index] = (text.length() << 9) | (ascii ? ASCII_ENTRY : 0) | replacement.length();
+                text.append(replacement);
+                entryIndexes.put(replacement, index);
+            }
+            int page = cp >>> PAGE_SHIFT;
+            if (pages[page] == emptyPage) {
+                pages[page] = new char[PAGE_MASK + 1];
+            }
+            pages[page][cp & PAGE_MASK] = (char) index.intValue();
+        }
+
+        int[] packedEntries = new int[entryCount];
+        System.arraycopy(entries, 0, packedEntries, 0, entryCount);
+        return new ReplacementTable(pages, packedEntries, text.toString().toCharArray(), replacements.size());
+    }
+
+    // Method to append the replacement for cp, returns false (appending nothing) if cp is unmapped
+    boolean appendReplacement(int cp, StringBuilder out) {
+        int index = pages[cp >>> PAGE_SHIFT][cp & PAGE_MASK];
+        if (index == 0) {
+            return false;
+        }
+        int entry = entries[index];
+        out.append(text, entry >>> 9, entry & 0xFF);
+        return true;
+    }
+
+    // Method to append the replacement for cp with any non-ASCII text in it escaped,
+    // returns false (appending nothing) if cp is unmapped
+    boolean appendReplacement(int cp, StringBuilder out, EscapeMode escapeMode) {
+        int index = pages[cp >>> PAGE_SHIFT][cp & PAGE_MASK];
+        if (index == 0) {
+            return false;
+        }
+        int entry = entries[index];
+        int offset = entry >>> 9;
+        int length = entry & 0xFF;
+        if ((entry & ASCII_ENTRY) != 0) {
+            out.append(text, offset, length);
+            return true;
+        }
+        for (int i = offset; i < offset + length; ) {
+            int c = Character.codePointAt(text, i, offset + length);
+            if (c <= 127) {
+                out.append((char) c);
+            } else {
+                escapeMode.append(c, out);
+            }
+            i += Character.charCount(c);
+        }
+        return true;
+    }
+
+    // Index of the entry for cp, 0 if cp is unmapped
+    int entryIndex(int cp) {
+        return pages[cp >>> PAGE_SHIFT][cp & PAGE_MASK];
+    }
+
+    // The UTF-8 replacement text of all entries, entry i is utf8Text()[utf8Offset(i), utf8Offset(i + 1))
+    byte[] utf8Text() {
+        return utf8Text;
+    }
+
+    int utf8Offset(int index) {
+        return utf8Offsets[index];
+    }
+
+    // The first four bytes of an entry's UTF-8 replacement, first byte lowest, zero-padded if it is shorter
+    int utf8Packed(int index) {
+        return utf8Packed[index];
+    }
+
+    // Number of mapped code points
+    int size() {
+        return size;
+    }
+
+    // Approximate heap footprint in bytes (array headers plus contents, distinct pages counted once)
+    long footprintBytes() {
+        final int arrayHeader = 16;
+        final int reference = 4;
+        long bytes = arrayHeader + (long) reference * pages.length;
+        Set<char[]> distinctPages = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (char[] page : pages) {
+            if (distinctPages.add(page)) {
+                bytes += arrayHeader + 2L * page.length;
+            }
+        }
+        bytes += arrayHeader + 4L * entries.length;
+        bytes += arrayHeader + 2L * text.length;
+        bytes += arrayHeader + 4L * utf8Offsets.length;
+        bytes += arrayHeader + utf8Text.length;
+        bytes += arrayHeader + 4L * utf8Packed.length;
+        return bytes;
+    }
+}
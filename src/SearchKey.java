@@ -0,0 +1,169 @@
+// Search keys for dedup and join indexes, in one pass over the input. A key is
+//   normalize(input).replaceAll("\\s{2,}", " ").trim().toLowerCase()
+// i.e. folded and escaped, runs of whitespace collapsed to a space, trimmed and lowercased (the normalized text
+// is ASCII, so lowercasing is ASCII only). hash gives a 64-bit hash of the key without building it at all.
+// Null passes through like in StringNormalizer: its key is null and its hash is NULL_HASH.
+public final class SearchKey {
+    // Hash of a null value (and of a null key), not the hash of any key
+    public static final long NULL_HASH = 0L;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Per-thread state so building keys for millions of values produces no garbage besides the keys
+    private static final ThreadLocal<KeyBuilder> builders = ThreadLocal.withInitial(KeyBuilder::new);
+
+    private SearchKey() {
+    }
+
+    // Method to build the search key of a value
+    public static String of(String input) {
+        if (input == null) {
+            return null;
+        }
+        KeyBuilder builder = builders.get();
+        builder.reset(true);
+        builder.accept(input);
+        String key = builder.key.toString();
+        builder.release();
+        return key;
+    }
+
+    // Method to hash the search key of a value, same as hashKey(of(input)) without building the key
+    public static long hash(String input) {
+        if (input == null) {
+            return NULL_HASH;
+        }
+        KeyBuilder builder = builders.get();
+        builder.reset(false);
+        builder.accept(input);
+        builder.release();
+        return finish(builder.hash);
+    }
+
+    // Method to hash many values at once, hashes[i] = hash(inputs[i])
+    public static void hashAll(String[] inputs, long[] hashes) {
+        if (hashes.length < inputs.length) {
+            throw new IllegalArgumentException("Hash array is shorter than the input array.");
+        }
+        KeyBuilder builder = builders.get();
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] == null) {
+                hashes[i] = NULL_HASH;
+                continue;
+            }
+            builder.reset(false);
+            builder.accept(inputs[i]);
+            hashes[i] = finish(builder.hash);
+        }
+        builder.release();
+    }
+
+    // Method to hash an already built key: FNV-1a over its chars, then the MurmurHash3 finalizer
+    // so that keys differing in one char differ in about half the bits
+    public static long hashKey(CharSequence key) {
+        if (key == null) {
+            return NULL_HASH;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return finish(hash);
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb53fe1a85ec3L;
+        hash ^= hash >>> 33;
+        return hash == NULL_HASH ? 1L : hash; // The finalizer is a bijection, only one key maps here
+    }
+
+    // Whitespace as matched by \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    // Takes the normalized text one char at a time and writes (or hashes) the key. Chars up to ' ' are held
+    // back until something else follows, so trailing ones can be dropped, which is what trim does.
+    private static final class KeyBuilder {
+        final StringBuilder key = new StringBuilder();
+        final StringBuilder pending = new StringBuilder();
+        final StringBuilder folded = new StringBuilder();
+        boolean building;
+        boolean started;
+        int spaceRun;
+        long hash;
+
+        void reset(boolean building) {
+            this.building = building;
+            key.setLength(0);
+            pending.setLength(0);
+            started = false;
+            spaceRun = 0;
+            hash = FNV_OFFSET_BASIS;
+        }
+
+        void accept(String input) {
+            int length = input.length();
+            for (int i = 0; i < length; ) {
+                char c = input.charAt(i);
+                if (c <= 127) {
+                    accept(c);
+                    i++;
+                } else {
+                    int cp = input.codePointAt(i);
+                    folded.setLength(0);
+                    StringNormalizer.appendNormalized(cp, folded);
+                    for (int j = 0; j < folded.length(); j++) {
+                        accept(folded.charAt(j));
+                    }
+                    i += Character.charCount(cp);
+                }
+            }
+        }
+
+        void accept(char c) {
+            if (c <= ' ') {
+                if (!started) {
+                    return; // Leading, trimmed
+                }
+                if (!isSpace(c)) {
+                    pending.append(c);
+                    spaceRun = 0;
+                } else if (spaceRun == 0) {
+                    pending.append(c);
+                    spaceRun = 1;
+                } else if (spaceRun == 1) {
+                    pending.setCharAt(pending.length() - 1, ' '); // Two or more collapse to one space
+                    spaceRun = 2;
+                }
+                return;
+            }
+            for (int i = 0; i < pending.length(); i++) {
+                emit(pending.charAt(i));
+            }
+            pending.setLength(0);
+            spaceRun = 0;
+            started = true;
+            emit(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+
+        private void emit(char c) {
+            if (building) {
+                key.append(c);
+            } else {
+                hash = (hash ^ c) * FNV_PRIME;
+            }
+        }
+
+        // Don't let one huge value pin a huge buffer to the thread
+        void release() {
+            if (key.capacity() > 64 * 1024 || pending.capacity() > 64 * 1024) {
+                builders.remove();
+            }
+        }
+    }
+}
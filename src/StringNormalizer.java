@@ -1,9 +1,32 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
 
 public class StringNormalizer {
     private static final Map<Character, String> specialReplacements = new HashMap<>();
+    // Profile built from the replacement map above, used by the static methods
+    private static final NormalizerProfile defaultProfile;
+    // Its folding table, kept in a static final field so the JIT treats it as a constant
+    private static final ReplacementTable foldingTable;
     static {
         // Scandinavian
         specialReplacements.put('ø', "o");
@@ -372,67 +395,623 @@ public class StringNormalizer {
         specialReplacements.put('¦', "|");
         specialReplacements.put('ª', "a");  // Feminine ordinal indicator
         specialReplacements.put('º', "o");  // Masculine ordinal indicator
+
+        Map<Integer, String> replacements = new HashMap<>();
+        for (Map.Entry<Character, String> replacement : specialReplacements.entrySet()) {
+            replacements.put((int) replacement.getKey(), replacement.getValue());
+        }
+        // Entries for characters that decompose (Ё, ∉, ...) never applied, decomposition always came first.
+        // Leave them out, since in a profile a rule for the character itself wins over its decomposition.
+        replacements.keySet().removeAll(Decompositions.table().keySet());
+        defaultProfile = new NormalizerProfile(replacements);
+        foldingTable = defaultProfile.foldingTable();
     }
 
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    // Batches at least this large are split into slices of this size when normalized in parallel
+    private static final int PARALLEL_BATCH_SLICE = 1024;
+
+    // Scratch space for the UTF-8 path, taken once per call: output is staged in the first UTF8_BLOCK bytes and
+    // written to out in bulk, input without a backing array is copied into the second UTF8_BLOCK bytes block by block
+    private static final int UTF8_BLOCK = 4096;
+    private static final ThreadLocal<byte[]> utf8Scratch = ThreadLocal.withInitial(() -> new byte[2 * UTF8_BLOCK]);
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
+    // Scratch buffer reused by the batch methods on each thread
+    private static final ThreadLocal<StringBuilder> batchScratch = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
     // Method to replace diacritics and normalize text
     public static String replaceDiacritics(String input) {
+        if (NormalizerMetrics.ENABLED) {
+            long start = System.nanoTime();
+            String result = fold(input, foldingTable, false);
+            NormalizerMetrics.recordCall(NormalizerMetrics.Operation.REPLACE_DIACRITICS, input, result, start);
+            return result;
+        }
+        return fold(input, foldingTable, false);
+    }
+
+    // Method to replace diacritics and then non-ASCII characters in one pass,
+    // same as replaceNonAscii(replaceDiacritics(input)) without the intermediate string for well-formed UTF-16.
+    // Lone surrogates are escaped one by one, and dropping the marks between them never pairs them up:
+    // high surrogate, combining mark, low surrogate gives &#55357;&#56832; here, where the two-step pipeline
+    // joins the halves into &#128512;. normalizeAll, the streaming overloads and SearchKey behave like normalize.
+    public static String normalize(String input) {
+        if (NormalizerMetrics.ENABLED) {
+            long start = System.nanoTime();
+            String result = fold(input, foldingTable, true);
+            NormalizerMetrics.recordCall(NormalizerMetrics.Operation.NORMALIZE, input, result, start);
+            return result;
+        }
+        return fold(input, foldingTable, true);
+    }
+
+    // The default profile, the starting point for custom ones
+    static NormalizerProfile defaultProfile() {
+        return defaultProfile;
+    }
+
+    // Fold input with the given folding table, HTML-escaping whatever is still non-ASCII if escapeNonAscii is set
+    static String fold(String input, ReplacementTable folding, boolean escapeNonAscii) {
+        return fold(input, folding, null, escapeNonAscii);
+    }
+
+    // Same, composing combining sequences that start with a code point in composingStarts first (null for none),
+    // so a profile rule for a precomposed character also applies to its decomposed form
+    static String fold(String input, ReplacementTable folding, BitSet composingStarts, boolean escapeNonAscii) {
         if (input == null) {
             return null;
         }
-        // Normalize the string to decomposed form (NFD)
-        String normalized = Normalizer.normalize(input, Normalizer.Form.NFD);
-        // Remove diacritic marks
-        String withoutDiacritics = normalized.replaceAll("\\p{M}", "");
-        // Manually replace special characters
-        StringBuilder result = new StringBuilder();
-        for (char c : withoutDiacritics.toCharArray()) {
-            result.append(specialReplacements.getOrDefault(c, String.valueOf(c)));
+        int length = input.length();
+        int i = asciiPrefixLength(input);
+        if (i == length) {
+            return input; // Pure ASCII, nothing to decompose, replace or escape
         }
+        StringBuilder result = new StringBuilder(length + 16);
+        if (composingStarts != null && i > 0 && composingStarts.get(input.charAt(i - 1))) {
+            i--; // The ASCII prefix ends in a combining sequence's first char
+        }
+        result.append(input, 0, i);
+        appendDiacriticsReplaced(input, i, length, result, folding, composingStarts, escapeNonAscii);
         return result.toString();
     }
 
+    static int asciiPrefixLength(String input) {
+        return AsciiScanner.firstNonAscii(input, 0, input.length());
+    }
+
+    // Append input[from, to) with diacritics removed and special characters replaced,
+    // then with whatever is still non-ASCII turned into HTML entities if escapeNonAscii is set
+    private static void appendDiacriticsReplaced(String input, int from, int to, StringBuilder result,
+                                                 ReplacementTable folding, boolean escapeNonAscii) {
+        appendDiacriticsReplaced(input, from, to, result, folding, null, escapeNonAscii);
+    }
+
+    private static void appendDiacriticsReplaced(String input, int from, int to, StringBuilder result,
+                                                 ReplacementTable folding, BitSet composingStarts,
+                                                 boolean escapeNonAscii) {
+        int i = from;
+        while (i < to) {
+            char c = input.charAt(i);
+            if (composingStarts != null && startsCombiningSequence(input, i, to, composingStarts)) {
+                i = appendComposedFolded(input, i, to, result, folding, escapeNonAscii);
+            } else if (c <= 127) {
+                // Copy the whole ASCII run at once, but leave out a last char that may start a combining sequence
+                int start = i;
+                i = AsciiScanner.firstNonAscii(input, i, to);
+                if (composingStarts != null && i < to && i - 1 > start && composingStarts.get(input.charAt(i - 1))) {
+                    i--;
+                }
+                result.append(input, start, i);
+            } else {
+                int cp = codePointAt(input, i, to);
+                appendFolded(cp, result, folding, escapeNonAscii);
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    // Whether the code point at i is in composingStarts and followed by a combining mark
+    private static boolean startsCombiningSequence(String input, int i, int to, BitSet composingStarts) {
+        int cp = codePointAt(input, i, to);
+        int next = i + Character.charCount(cp);
+        return composingStarts.get(cp) && next < to && Decompositions.isMark(codePointAt(input, next, to));
+    }
+
+    // Fold the combining sequence starting at i in its composed (NFC) form, so it meets the same rules as the
+    // precomposed character it is equivalent to, and return where the sequence ends
+    private static int appendComposedFolded(String input, int i, int to, StringBuilder result,
+                                            ReplacementTable folding, boolean escapeNonAscii) {
+        int end = i + Character.charCount(codePointAt(input, i, to));
+        while (end < to && Decompositions.isMark(codePointAt(input, end, to))) {
+            end += Character.charCount(codePointAt(input, end, to));
+        }
+        String composed = Normalizer.normalize(input.substring(i, end), Normalizer.Form.NFC);
+        for (int j = 0; j < composed.length(); ) {
+            int cp = composed.codePointAt(j);
+            if (cp <= 127) {
+                result.append((char) cp);
+            } else {
+                appendFolded(cp, result, folding, escapeNonAscii);
+            }
+            j += Character.charCount(cp);
+        }
+        return end;
+    }
+
+    // Append one code point as normalize would write it
+    static void appendNormalized(int cp, StringBuilder result) {
+        if (cp <= 127) {
+            result.append((char) cp);
+        } else {
+            appendFolded(cp, result, foldingTable, true);
+        }
+    }
+
+    // Append the folded form of one non-ASCII code point, HTML-escaping whatever is still non-ASCII if asked to
+    static void appendFolded(int cp, StringBuilder result, ReplacementTable folding, boolean escapeNonAscii) {
+        boolean folded = escapeNonAscii
+                ? folding.appendReplacement(cp, result, EscapeMode.HTML)
+                : folding.appendReplacement(cp, result);
+        if (folded) {
+            if (NormalizerMetrics.ENABLED) {
+                NormalizerMetrics.recordFolded(cp);
+            }
+            return;
+        }
+        if (Decompositions.isHangulSyllable(cp)) {
+            appendFolded(Decompositions.hangulLeading(cp), result, folding, escapeNonAscii);
+            appendFolded(Decompositions.hangulVowel(cp), result, folding, escapeNonAscii);
+            int trailing = Decompositions.hangulTrailing(cp);
+            if (trailing != 0) {
+                appendFolded(trailing, result, folding, escapeNonAscii);
+            }
+        } else if (escapeNonAscii) {
+            EscapeMode.HTML.append(cp, result);
+        } else {
+            result.appendCodePoint(cp);
+        }
+    }
+
+    // Method to replace diacritics in UTF-8 bytes without decoding to a String.
+    // Reads in[offset, offset + length) and writes UTF-8 into out, returns the number of bytes written.
+    public static int replaceDiacritics(byte[] in, int offset, int length, ByteBuffer out) {
+        Objects.checkFromIndexSize(offset, length, in.length);
+        int start = out.position();
+        try {
+            byte[] scratch = utf8Scratch.get();
+            int staged = foldUtf8(in, offset, offset + length, scratch, 0, out);
+            if (staged < 0) {
+                // Malformed input, let the JDK decoder handle replacement for the whole input
+                out.position(start);
+                return replaceDiacriticsDecoded(ByteBuffer.wrap(in, offset, length), out);
+            }
+            flushUtf8(scratch, staged, out);
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        return out.position() - start;
+    }
+
+    // Method to replace diacritics in UTF-8 bytes without decoding to a String.
+    // Consumes in up to its limit and writes UTF-8 into out (heap or direct), returns the number of bytes written.
+    // Output matches replaceDiacritics on the decoded text, with malformed input decoded as U+FFFD.
+    // If out is too small a BufferOverflowException is thrown and neither buffer's position is changed.
+    public static int replaceDiacritics(ByteBuffer in, ByteBuffer out) {
+        if (in.hasArray()) {
+            int written = replaceDiacritics(in.array(), in.arrayOffset() + in.position(), in.remaining(), out);
+            in.position(in.limit());
+            return written;
+        }
+        int start = out.position();
+        int limit = in.limit();
+        try {
+            byte[] scratch = utf8Scratch.get();
+            int staged = 0;
+            for (int pos = in.position(); pos < limit; ) {
+                // End the block on a code point start, so no well-formed sequence is split between blocks
+                int end = Math.min(limit, pos + UTF8_BLOCK);
+                for (int i = 0; i < 3 && end < limit && isContinuation(in.get(end)); i++) {
+                    end--;
+                }
+                in.get(pos, scratch, UTF8_BLOCK, end - pos);
+                staged = foldUtf8(scratch, UTF8_BLOCK, UTF8_BLOCK + end - pos, scratch, staged, out);
+                if (staged < 0) {
+                    out.position(start);
+                    return replaceDiacriticsDecoded(in, out);
+                }
+                pos = end;
+            }
+            flushUtf8(scratch, staged, out);
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+        in.position(limit);
+        return out.position() - start;
+    }
+
+    // Fold the UTF-8 in src[from, to) into the staging area at the start of scratch, which holds staged bytes
+    // already. Returns how many bytes are staged afterwards, or -1 if the input is malformed.
+    // ASCII and code points without a replacement keep their bytes and are copied a whole run at a time.
+    private static int foldUtf8(byte[] src, int from, int to, byte[] scratch, int staged, ByteBuffer out) {
+        int copyFrom = from; // src[copyFrom, pos) is copied unchanged
+        int pos = from;
+        while (true) {
+            if (pos < to && src[pos] >= 0) {
+                // Skip ASCII eight bytes at a time
+                while (pos + 8 <= to && ((long) LONGS.get(src, pos) & ASCII_MASK) == 0) {
+                    pos += 8;
+                }
+                while (pos < to && src[pos] >= 0) {
+                    pos++;
+                }
+            }
+            if (pos == to) {
+                break;
+            }
+
+            int cp = decodeUtf8(src, pos, to);
+            if (cp < 0) {
+                return -1;
+            }
+            int next = pos + (cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4);
+            int index = foldingTable.entryIndex(cp);
+            boolean hangul = index == 0 && Decompositions.isHangulSyllable(cp);
+            if (index != 0 || hangul) {
+                if (pos > copyFrom) {
+                    staged = stageUtf8(src, copyFrom, pos - copyFrom, scratch, staged, out);
+                }
+                staged = hangul
+                        ? stageHangul(cp, scratch, staged, out)
+                        : stageReplacement(cp, index, scratch, staged, out);
+                copyFrom = next;
+            }
+            pos = next;
+        }
+        return stageUtf8(src, copyFrom, to - copyFrom, scratch, staged, out);
+    }
+
+    // Stage the replacement of a mapped code point, the byte path's appendReplacement
+    private static int stageReplacement(int cp, int index, byte[] scratch, int staged, ByteBuffer out) {
+        if (NormalizerMetrics.ENABLED) {
+            NormalizerMetrics.recordFolded(cp);
+        }
+        int offset = foldingTable.utf8Offset(index);
+        int length = foldingTable.utf8Offset(index + 1) - offset;
+        if (length > 4) {
+            return stageUtf8(foldingTable.utf8Text(), offset, length, scratch, staged, out);
+        }
+        // Store the whole replacement in one write, the bytes past its length are overwritten later
+        if (staged + 4 > UTF8_BLOCK) {
+            flushUtf8(scratch, staged, out);
+            staged = 0;
+        }
+        INTS.set(scratch, staged, foldingTable.utf8Packed(index));
+        return staged + length;
+    }
+
+    // Stage an unmapped Hangul syllable as its conjoining jamo, folding each the way appendFolded does
+    private static int stageHangul(int cp, byte[] scratch, int staged, ByteBuffer out) {
+        staged = stageJamo(Decompositions.hangulLeading(cp), scratch, staged, out);
+        staged = stageJamo(Decompositions.hangulVowel(cp), scratch, staged, out);
+        int trailing = Decompositions.hangulTrailing(cp);
+        return trailing == 0 ? staged : stageJamo(trailing, scratch, staged, out);
+    }
+
+    private static int stageJamo(int jamo, byte[] scratch, int staged, ByteBuffer out) {
+        int index = foldingTable.entryIndex(jamo);
+        if (index != 0) {
+            return stageReplacement(jamo, index, scratch, staged, out);
+        }
+        // Conjoining jamo are all in U+1100..U+11FF, three bytes each
+        if (staged + 3 > UTF8_BLOCK) {
+            flushUtf8(scratch, staged, out);
+            staged = 0;
+        }
+        scratch[staged] = (byte) (0xE0 | (jamo >> 12));
+        scratch[staged + 1] = (byte) (0x80 | ((jamo >> 6) & 0x3F));
+        scratch[staged + 2] = (byte) (0x80 | (jamo & 0x3F));
+        return staged + 3;
+    }
+
+    // Stage bytes[offset, offset + length), flushing first if they don't fit. Runs longer than the staging area
+    // go to out directly. Returns how many bytes are staged afterwards.
+    private static int stageUtf8(byte[] bytes, int offset, int length, byte[] scratch, int staged, ByteBuffer out) {
+        if (staged + length > UTF8_BLOCK) {
+            flushUtf8(scratch, staged, out);
+            staged = 0;
+            if (length > UTF8_BLOCK) {
+                out.put(bytes, offset, length);
+                return 0;
+            }
+        }
+        System.arraycopy(bytes, offset, scratch, staged, length);
+        return staged + length;
+    }
+
+    private static void flushUtf8(byte[] scratch, int staged, ByteBuffer out) {
+        out.put(scratch, 0, staged);
+    }
+
+    // Decode the well-formed UTF-8 sequence starting at a non-ASCII byte, or return -1 if it is malformed
+    private static int decodeUtf8(byte[] in, int pos, int limit) {
+        int b0 = in[pos] & 0xFF;
+        int length = b0 < 0xE0 ? 2 : b0 < 0xF0 ? 3 : 4;
+        if (b0 < 0xC2 || b0 > 0xF4 || pos + length > limit) {
+            return -1;
+        }
+        // The second byte's range rules out overlong forms (E0 80..9F, F0 80..8F),
+        // surrogates (ED A0..BF) and code points past U+10FFFF (F4 90..BF)
+        int b1 = in[pos + 1] & 0xFF;
+        int min = b0 == 0xE0 ? 0xA0 : b0 == 0xF0 ? 0x90 : 0x80;
+        int max = b0 == 0xED ? 0x9F : b0 == 0xF4 ? 0x8F : 0xBF;
+        if (b1 < min || b1 > max) {
+            return -1;
+        }
+        if (length == 2) {
+            return ((b0 & 0x1F) << 6) | (b1 & 0x3F);
+        }
+        byte b2 = in[pos + 2];
+        if (!isContinuation(b2)) {
+            return -1;
+        }
+        if (length == 3) {
+            return ((b0 & 0x0F) << 12) | ((b1 & 0x3F) << 6) | (b2 & 0x3F);
+        }
+        byte b3 = in[pos + 3];
+        if (!isContinuation(b3)) {
+            return -1;
+        }
+        return ((b0 & 0x07) << 18) | ((b1 & 0x3F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F);
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    // Slow path for malformed UTF-8: decode with replacement, fold and encode
+    private static int replaceDiacriticsDecoded(ByteBuffer in, ByteBuffer out) {
+        String text = StandardCharsets.UTF_8.decode(in.duplicate()).toString();
+        byte[] encoded = replaceDiacritics(text).getBytes(StandardCharsets.UTF_8);
+        if (out.remaining() < encoded.length) {
+            throw new BufferOverflowException();
+        }
+        out.put(encoded);
+        in.position(in.limit());
+        return encoded.length;
+    }
+
     // Method to replace non-ASCII characters with HTML entity
     public static String replaceNonAscii(String input) {
-        StringBuilder sb = new StringBuilder();
+        if (NormalizerMetrics.ENABLED) {
+            long start = System.nanoTime();
+            String result = lookup(input, EscapeMode.HTML);
+            NormalizerMetrics.recordCall(NormalizerMetrics.Operation.REPLACE_NON_ASCII, input, result, start);
+            return result;
+        }
+        return lookup(input, EscapeMode.HTML);
+    }
 
-        for (char c : input.toCharArray()) {
-            if (c <= 127) {
-                sb.append(c); // Keep
-            } else {
-                sb.append("&#").append((int) c).append(";"); // Convert
+    // Method to normalize a character stream in bounded memory.
+    // Output matches normalize(text) for the whole text, see there for lone surrogates.
+    public static void normalize(Reader reader, Writer writer) throws IOException {
+        char[] buffer = new char[STREAM_BUFFER_SIZE];
+        StringBuilder normalized = new StringBuilder(STREAM_BUFFER_SIZE * 2);
+        char[] output = new char[STREAM_BUFFER_SIZE * 2];
+        int carried = 0;
+        int read;
+        while ((read = reader.read(buffer, carried, buffer.length - carried)) != -1) {
+            int end = carried + read;
+            // Surrogate pairs are decomposed as a unit, so hold back a trailing high surrogate for the next read.
+            // Nothing else needs carrying: combining marks are dropped on their own, whatever base they follow.
+            int complete = end > 0 && Character.isHighSurrogate(buffer[end - 1]) ? end - 1 : end;
+            output = normalizeChunk(buffer, complete, normalized, output, writer);
+            carried = end - complete;
+            if (carried > 0) {
+                buffer[0] = buffer[complete];
             }
         }
+        normalizeChunk(buffer, carried, normalized, output, writer);
+        writer.flush();
+    }
 
-        return sb.toString();
+    // Method to normalize UTF-8 text between channels in bounded memory, malformed input becomes U+FFFD.
+    // Neither channel is closed.
+    public static void normalize(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        Reader reader = Channels.newReader(in, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), STREAM_BUFFER_SIZE);
+        Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), STREAM_BUFFER_SIZE);
+        normalize(reader, writer);
+    }
+
+    // Normalize buffer[0, length) and write it, returns the (possibly grown) output buffer
+    private static char[] normalizeChunk(char[] buffer, int length, StringBuilder normalized,
+                                         char[] output, Writer writer) throws IOException {
+        if (length == 0) {
+            return output;
+        }
+        normalized.setLength(0);
+        appendDiacriticsReplaced(new String(buffer, 0, length), 0, length, normalized, foldingTable, true);
+        if (output.length < normalized.length()) {
+            output = new char[normalized.length()];
+        }
+        normalized.getChars(0, normalized.length(), output, 0);
+        writer.write(output, 0, normalized.length());
+        return output;
+    }
+
+    // Method to normalize a batch of strings, out[i] = normalize(in[i]). in and out may be the same array.
+    public static void normalizeAll(String[] in, String[] out) {
+        normalizeAll(in, out, false);
+    }
+
+    // Method to normalize a batch of strings, optionally spreading large batches over the common ForkJoinPool
+    public static void normalizeAll(String[] in, String[] out, boolean parallel) {
+        if (out.length < in.length) {
+            throw new IllegalArgumentException("Output array is shorter than the input array.");
+        }
+        if (parallel && in.length >= 2 * PARALLEL_BATCH_SLICE) {
+            int slices = (in.length + PARALLEL_BATCH_SLICE - 1) / PARALLEL_BATCH_SLICE;
+            IntStream.range(0, slices).parallel().forEach(slice -> {
+                int from = slice * PARALLEL_BATCH_SLICE;
+                normalizeRange(in, out, from, Math.min(in.length, from + PARALLEL_BATCH_SLICE));
+            });
+        } else {
+            normalizeRange(in, out, 0, in.length);
+        }
+    }
+
+    // Method to normalize a list of strings into a new list
+    public static List<String> normalizeAll(List<String> in) {
+        String[] values = in.toArray(new String[0]);
+        normalizeAll(values, values);
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    // Method to normalize columnar data in place, one String[] per column
+    public static void normalizeColumns(String[][] columns, boolean parallel) {
+        for (String[] column : columns) {
+            normalizeAll(column, column, parallel);
+        }
+    }
+
+    private static void normalizeRange(String[] in, String[] out, int from, int to) {
+        StringBuilder scratch = batchScratch.get();
+        for (int i = from; i < to; i++) {
+            String input = in[i];
+            int asciiPrefix = input == null ? 0 : asciiPrefixLength(input);
+            if (input == null || asciiPrefix == input.length()) {
+                out[i] = input;
+                continue;
+            }
+            scratch.setLength(0);
+            scratch.append(input, 0, asciiPrefix);
+            appendDiacriticsReplaced(input, asciiPrefix, input.length(), scratch, foldingTable, true);
+            out[i] = scratch.toString();
+        }
+        // Don't let one huge value pin a huge buffer to the thread
+        if (scratch.capacity() > 64 * 1024) {
+            batchScratch.remove();
+        }
     }
 
     // Method to lookup non-ASCII characters based on mode
     public static String nonAsciiLookup(String input, String mode) {
-        StringBuilder sb = new StringBuilder();
+        if (NormalizerMetrics.ENABLED) {
+            long start = System.nanoTime();
+            String result = lookup(input, mode);
+            NormalizerMetrics.recordCall(NormalizerMetrics.Operation.NON_ASCII_LOOKUP, input, result, start);
+            return result;
+        }
+        return lookup(input, mode);
+    }
 
-        for (char c : input.toCharArray()) {
-            if (c <= 127) {
-                sb.append(c); // Keep ASCII characters
-            } else {
-                switch (mode.toLowerCase()) {
-                    case "html":
-                        sb.append("&#").append((int) c).append(";"); // HTML entity
-                        break;
-                    case "unicode":
-                        sb.append(String.format("\\u%04X", (int) c)); // Unicode escape
-                        break;
-                    case "hex":
-                        sb.append(String.format("0x%04X", (int) c)); // Hexadecimal
-                        break;
-                    default:
-                        throw new IllegalArgumentException("Invalid mode. Use 'html', 'unicode', or 'hex'.");
-                }
+    // Method to lookup non-ASCII characters based on a mode resolved up front
+    public static String nonAsciiLookup(String input, EscapeMode mode) {
+        if (NormalizerMetrics.ENABLED) {
+            long start = System.nanoTime();
+            String result = lookup(input, mode);
+            NormalizerMetrics.recordCall(NormalizerMetrics.Operation.NON_ASCII_LOOKUP, input, result, start);
+            return result;
+        }
+        return lookup(input, mode);
+    }
+
+    private static String lookup(String input, String mode) {
+        int asciiPrefix = asciiPrefixLength(input);
+        if (asciiPrefix == input.length()) {
+            return input; // The mode is only looked at once there is something to escape
+        }
+        return escape(input, asciiPrefix, EscapeMode.fromName(mode));
+    }
+
+    private static String lookup(String input, EscapeMode mode) {
+        int asciiPrefix = asciiPrefixLength(input);
+        if (asciiPrefix == input.length()) {
+            return input;
+        }
+        return escape(input, asciiPrefix, mode);
+    }
+
+    // Method to escape non-ASCII characters straight into the caller's Appendable
+    public static void nonAsciiLookup(CharSequence input, EscapeMode mode, Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            appendEscaped(input, 0, input.length(), mode, (StringBuilder) out);
+            return;
+        }
+        // Escapes are staged in a small buffer, ASCII runs go straight through
+        StringBuilder escapes = new StringBuilder(64);
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            i = AsciiScanner.firstNonAscii(input, i, length);
+            if (i > start) {
+                out.append(input, start, i);
+            }
+            escapes.setLength(0);
+            while (i < length && input.charAt(i) > 127 && escapes.length() < 48) {
+                int cp = codePointAt(input, i, length);
+                mode.append(cp, escapes);
+                i += Character.charCount(cp);
+            }
+            if (escapes.length() > 0) {
+                out.append(escapes);
             }
         }
+    }
 
+    private static String escape(String input, int asciiPrefix, EscapeMode mode) {
+        int length = input.length();
+        // Count what needs escaping first, so mostly-ASCII text doesn't get a buffer sized for the worst case.
+        // No escape is longer than 8 chars per UTF-16 char (&#65535;), StringBuilder grows past that if needed.
+        int nonAscii = 0;
+        for (int i = asciiPrefix; i < length; i++) {
+            i = AsciiScanner.firstNonAscii(input, i, length);
+            if (i < length) {
+                nonAscii++;
+            }
+        }
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 16, length + 7L * nonAscii));
+        sb.append(input, 0, asciiPrefix);
+        appendEscaped(input, asciiPrefix, length, mode, sb);
         return sb.toString();
     }
 
+    // Append input[from, to), copying ASCII runs in bulk and escaping everything else
+    private static void appendEscaped(CharSequence input, int from, int to, EscapeMode mode, StringBuilder out) {
+        int i = from;
+        while (i < to) {
+            int start = i;
+            i = AsciiScanner.firstNonAscii(input, i, to);
+            if (i > start) {
+                out.append(input, start, i);
+            }
+            while (i < to && input.charAt(i) > 127) {
+                int cp = codePointAt(input, i, to);
+                mode.append(cp, out);
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    // Code point at index, only pairing surrogates that both lie before limit
+    private static int codePointAt(CharSequence input, int index, int limit) {
+        char c = input.charAt(index);
+        if (Character.isHighSurrogate(c) && index + 1 < limit) {
+            char low = input.charAt(index + 1);
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(c, low);
+            }
+        }
+        return c;
+    }
+
     public static void main(String[] args) {
         String[] testCases = {
                 "Sørensen",
@@ -0,0 +1,367 @@
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Transliteration with multi-character rules on top of a NormalizerProfile, for spellings that depend on
+// context, like Greek ου -> ou. The rules are compiled into a trie, and the input is read once, left to right:
+// at each position the longest matching rule wins. Without a match the code point is folded by the profile,
+// exactly as StringNormalizer.replaceDiacritics would. Rules are limited in length, so a match never reads
+// more than a bounded number of code points ahead and the whole pass stays linear, without the failure
+// links a full Aho-Corasick automaton needs for finding overlapping matches.
+//
+// Rules are accent-insensitive like the folding itself: a rule for ου also matches ού, precomposed or with
+// combining marks. The exception is the diaeresis (U+0308, the Greek dialytika), which is written precisely to
+// keep two letters apart: ουϋ and οϋ are not ου, so Προϋπόθεση is Proypothesi. A rule can also be limited to
+// the start of a word, where the previous code point is not a letter, digit or mark.
+public final class Transliterator {
+    private static final int MAX_RULE_LENGTH = 16;
+    private static final int COMBINING_DIAERESIS = 0x0308;
+
+    private static final Transliterator defaultTransliterator = builder().build();
+
+    private final ReplacementTable folding;
+    private final BitSet starts;       // Code points at least one rule can begin with
+    private final boolean asciiStarts; // Whether any of them is ASCII
+    // Trie with node 0 as the root. The children of a node are childCodePoints/childNodes
+    // [firstChild[node], firstChild[node + 1]), sorted by code point.
+    private final int[] firstChild;
+    private final int[] childCodePoints;
+    private final int[] childNodes;
+    private final String[] replacements;          // Per node, null if no rule ends there
+    private final String[] wordStartReplacements; // Per node, rules that only apply at the start of a word
+
+    private Transliterator(ReplacementTable folding, BitSet starts, int[] firstChild, int[] childCodePoints,
+                           int[] childNodes, String[] replacements, String[] wordStartReplacements) {
+        this.folding = folding;
+        this.starts = starts;
+        this.asciiStarts = starts.nextSetBit(0) >= 0 && starts.nextSetBit(0) <= 127;
+        this.firstChild = firstChild;
+        this.childCodePoints = childCodePoints;
+        this.childNodes = childNodes;
+        this.replacements = replacements;
+        this.wordStartReplacements = wordStartReplacements;
+    }
+
+    // The default profile with the contextual rules below
+    public static Transliterator defaultTransliterator() {
+        return defaultTransliterator;
+    }
+
+    // Method to start from the default profile and contextual rules
+    public static Builder builder() {
+        return builder(NormalizerProfile.defaultProfile()).defaultRules();
+    }
+
+    // Method to start from a profile, without any multi-character rules
+    public static Builder builder(NormalizerProfile profile) {
+        return new Builder(profile);
+    }
+
+    // Method to transliterate text, the result is replaceDiacritics with the rules applied
+    public String transliterate(String input) {
+        return apply(input, false);
+    }
+
+    // Method to transliterate text and HTML-escape whatever is still non-ASCII
+    public String normalize(String input) {
+        return apply(input, true);
+    }
+
+    private String apply(String input, boolean escapeNonAscii) {
+        if (input == null) {
+            return null;
+        }
+        int length = input.length();
+        int i = asciiStarts ? 0 : StringNormalizer.asciiPrefixLength(input);
+        if (i == length) {
+            return input; // Pure ASCII and no rule that could match it
+        }
+        StringBuilder result = new StringBuilder(length + 16);
+        result.append(input, 0, i);
+        while (i < length) {
+            char c = input.charAt(i);
+            if (c <= 127 && !starts.get(c)) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            int cp = input.codePointAt(i);
+            if (starts.get(cp)) {
+                int end = appendLongestMatch(input, i, result, escapeNonAscii);
+                if (end > i) {
+                    i = end;
+                    continue;
+                }
+            }
+            if (cp <= 127) {
+                result.append(c);
+            } else {
+                StringNormalizer.appendFolded(cp, result, folding, escapeNonAscii);
+            }
+            i += Character.charCount(cp);
+        }
+        return result.toString();
+    }
+
+    // Append the replacement of the longest rule matching at start and return where it ends,
+    // or return start if no rule matches there
+    private int appendLongestMatch(String input, int start, StringBuilder result, boolean escapeNonAscii) {
+        boolean wordStart = start == 0 || !isWordPart(input.codePointBefore(start));
+        String match = null;
+        int matchEnd = start;
+        // Longest match ending before the last code point taken, in case a diaeresis turns up on that one
+        String previousMatch = null;
+        int previousMatchEnd = start;
+        int node = 0;
+        int i = start;
+        while (i < input.length()) {
+            int cp = input.codePointAt(i);
+            if (cp == COMBINING_DIAERESIS) {
+                // The last code point is kept apart from the one before it, so no match may include it
+                match = previousMatch;
+                matchEnd = previousMatchEnd;
+                break;
+            }
+            int child = child(node, cp);
+            if (child < 0) {
+                if (node != 0 && Decompositions.isMark(cp)) {
+                    i += Character.charCount(cp); // Combining marks inside a match are dropped like anywhere else
+                    continue;
+                }
+                break;
+            }
+            previousMatch = match;
+            previousMatchEnd = matchEnd;
+            node = child;
+            i += Character.charCount(cp);
+            String replacement = wordStart && wordStartReplacements[node] != null
+                    ? wordStartReplacements[node] : replacements[node];
+            if (replacement != null) {
+                match = replacement;
+                matchEnd = i;
+            }
+        }
+        if (match == null) {
+            return start;
+        }
+        for (int j = 0; j < match.length(); ) {
+            int cp = match.codePointAt(j);
+            if (cp > 127 && escapeNonAscii) {
+                EscapeMode.HTML.append(cp, result);
+            } else {
+                result.appendCodePoint(cp);
+            }
+            j += Character.charCount(cp);
+        }
+        return matchEnd;
+    }
+
+    private int child(int node, int cp) {
+        int low = firstChild[node];
+        int high = firstChild[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = childCodePoints[mid];
+            if (value < cp) {
+                low = mid + 1;
+            } else if (value > cp) {
+                high = mid - 1;
+            } else {
+                return childNodes[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWordPart(int cp) {
+        return Character.isLetterOrDigit(cp) || Decompositions.isMark(cp);
+    }
+
+    // Mutable collector of rules, not thread-safe. Every build() compiles a new, independent transliterator.
+    public static final class Builder {
+        private final NormalizerProfile profile;
+        private final Map<String, String> rules = new LinkedHashMap<>();
+        private final Map<String, String> wordStartRules = new LinkedHashMap<>();
+
+        private Builder(NormalizerProfile profile) {
+            this.profile = profile;
+        }
+
+        // Method to add the contextual rules shipped by default
+        public Builder defaultRules() {
+            // Greek: ου is one vowel, and μπ/ντ/γκ are voiced stops at the start of a word
+            put("ου", "ou");
+            put("Ου", "Ou");
+            put("ΟΥ", "OU");
+            putAtWordStart("μπ", "b");
+            putAtWordStart("Μπ", "B");
+            putAtWordStart("ΜΠ", "B");
+            putAtWordStart("ντ", "d");
+            putAtWordStart("Ντ", "D");
+            putAtWordStart("ΝΤ", "D");
+            putAtWordStart("γκ", "g");
+            putAtWordStart("Γκ", "G");
+            putAtWordStart("ΓΚ", "G");
+
+            // Cyrillic: a soft sign before a vowel marks the vowel as iotated
+            put("ье", "ye");
+            put("ьи", "yi");
+            put("ЬЕ", "YE");
+            put("ЬИ", "YI");
+            return this;
+        }
+
+        // Method to add or override a rule, applied wherever the sequence occurs
+        public Builder put(String sequence, String replacement) {
+            rules.put(checkSequence(sequence), checkReplacement(sequence, replacement));
+            return this;
+        }
+
+        // Method to add or override a rule that only applies at the start of a word.
+        // Elsewhere a rule added with put for the same sequence applies, if there is one.
+        public Builder putAtWordStart(String sequence, String replacement) {
+            wordStartRules.put(checkSequence(sequence), checkReplacement(sequence, replacement));
+            return this;
+        }
+
+        // Method to drop the rules for a sequence
+        public Builder remove(String sequence) {
+            rules.remove(sequence);
+            wordStartRules.remove(sequence);
+            return this;
+        }
+
+        // Method to compile the rules, which can then be shared freely between threads
+        public Transliterator build() {
+            TrieNode root = new TrieNode();
+            for (Map.Entry<String, String> rule : rules.entrySet()) {
+                root.insert(rule.getKey()).replacement = rule.getValue();
+            }
+            for (Map.Entry<String, String> rule : wordStartRules.entrySet()) {
+                root.insert(rule.getKey()).wordStartReplacement = rule.getValue();
+            }
+            addPrecomposedVariants(root);
+
+            // Number the nodes breadth first and lay their children out in flat arrays
+            Map<TrieNode, Integer> ids = new IdentityHashMap<>();
+            List<TrieNode> nodes = new ArrayList<>();
+            Deque<TrieNode> queue = new ArrayDeque<>();
+            ids.put(root, 0);
+            nodes.add(root);
+            queue.add(root);
+            int childCount = 0;
+            while (!queue.isEmpty()) {
+                TrieNode node = queue.poll();
+                childCount += node.children.size();
+                for (TrieNode child : node.children.values()) {
+                    if (!ids.containsKey(child)) {
+                        ids.put(child, nodes.size());
+                        nodes.add(child);
+                        queue.add(child);
+                    }
+                }
+            }
+            int[] firstChild = new int[nodes.size() + 1];
+            int[] childCodePoints = new int[childCount];
+            int[] childNodes = new int[childCount];
+            String[] replacements = new String[nodes.size()];
+            String[] wordStartReplacements = new String[nodes.size()];
+            int next = 0;
+            for (int id = 0; id < nodes.size(); id++) {
+                TrieNode node = nodes.get(id);
+                firstChild[id] = next;
+                for (Map.Entry<Integer, TrieNode> child : node.children.entrySet()) {
+                    childCodePoints[next] = child.getKey();
+                    childNodes[next] = ids.get(child.getValue());
+                    next++;
+                }
+                replacements[id] = node.replacement;
+                wordStartReplacements[id] = node.wordStartReplacement;
+            }
+            firstChild[nodes.size()] = next;
+
+            BitSet starts = new BitSet();
+            for (int cp : root.children.keySet()) {
+                starts.set(cp);
+            }
+            return new Transliterator(profile.foldingTable(), starts, firstChild, childCodePoints, childNodes,
+                    replacements, wordStartReplacements);
+        }
+
+        // Let every precomposed form of a rule's code point (ύ for υ, ...) lead to the same node,
+        // unless a rule for the precomposed form itself already does. Forms with a diaeresis (ϋ, ΰ) are left
+        // out, they never match the plain letter inside a rule.
+        private static void addPrecomposedVariants(TrieNode root) {
+            Map<Integer, List<Integer>> precomposed = new HashMap<>();
+            for (Map.Entry<Integer, String> entry : Decompositions.table().entrySet()) {
+                String decomposition = entry.getValue();
+                if (!decomposition.isEmpty() && decomposition.codePointCount(0, decomposition.length()) == 1
+                        && !hasDiaeresis(entry.getKey())) {
+                    precomposed.computeIfAbsent(decomposition.codePointAt(0), k -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+            Deque<TrieNode> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                TrieNode node = queue.poll();
+                Map<Integer, TrieNode> variants = new HashMap<>();
+                for (Map.Entry<Integer, TrieNode> child : node.children.entrySet()) {
+                    queue.add(child.getValue());
+                    for (int variant : precomposed.getOrDefault(child.getKey(), List.of())) {
+                        if (!node.children.containsKey(variant)) {
+                            variants.putIfAbsent(variant, child.getValue());
+                        }
+                    }
+                }
+                node.children.putAll(variants);
+            }
+        }
+
+        private static boolean hasDiaeresis(int cp) {
+            String decomposed = Normalizer.normalize(new String(Character.toChars(cp)), Normalizer.Form.NFD);
+            return decomposed.indexOf(COMBINING_DIAERESIS) >= 0;
+        }
+
+        private static String checkSequence(String sequence) {
+            if (sequence == null || sequence.isEmpty()) {
+                throw new IllegalArgumentException("Rule sequence must not be empty.");
+            }
+            if (sequence.codePointCount(0, sequence.length()) > MAX_RULE_LENGTH) {
+                throw new IllegalArgumentException("Rule sequence '" + sequence + "' is longer than "
+                        + MAX_RULE_LENGTH + " code points.");
+            }
+            return sequence;
+        }
+
+        private static String checkReplacement(String sequence, String replacement) {
+            if (replacement == null) {
+                throw new IllegalArgumentException("Replacement for '" + sequence + "' is null.");
+            }
+            return replacement;
+        }
+    }
+
+    private static final class TrieNode {
+        final TreeMap<Integer, TrieNode> children = new TreeMap<>();
+        String replacement;
+        String wordStartReplacement;
+
+        TrieNode insert(String sequence) {
+            TrieNode node = this;
+            for (int i = 0; i < sequence.length(); ) {
+                int cp = sequence.codePointAt(i);
+                node = node.children.computeIfAbsent(cp, k -> new TrieNode());
+                i += Character.charCount(cp);
+            }
+            return node;
+        }
+    }
+}